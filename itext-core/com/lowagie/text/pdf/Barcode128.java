@@ -47,10 +47,16 @@
  * http://www.lowagie.com/iText/
  */
 package com.lowagie.text.pdf;
-import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Image;
-import java.awt.image.MemoryImageSource;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
 
 /**
  * Implements the code 128 and UCC/EAN-128. Other symbologies are allowed in raw mode.<p>
@@ -190,6 +196,23 @@ public class Barcode128 implements Barcode {
     /** The stop bars.
      */    
     private static final byte BARS_STOP[] = {2, 3, 3, 1, 1, 1, 2};
+    
+    /** The modules of each symbol, 11 bits with the first module in the
+     * most significant bit and 1 for a bar.
+     */
+    private static final int PATTERNS[] = new int[BARS.length];
+    
+    /** The modules of the stop bars, 13 bits.
+     */
+    private static final int PATTERN_STOP = getPattern(BARS_STOP);
+    
+    static {
+        for (int k = 0; k < BARS.length; ++k)
+            PATTERNS[k] = getPattern(BARS[k]);
+    }
+    /** The code to shift between the charsets A and B for the next character.
+     */
+    public static final char SHIFT_INDEX = 98;
     /** The charset code change.
      */
     public static final char CODE_AB_TO_C = 99;
@@ -224,7 +247,54 @@ public class Barcode128 implements Barcode {
     public static final char STARTB = '\u00cc';
     public static final char STARTC = '\u00cd';
     
-    private static final IntHashtable ais = new IntHashtable();
+    /** The UCC/EAN-128 application identifiers as ranges sorted by the first
+     * identifier: first identifier, last identifier and the length of the
+     * identifier and its data or -1 if the data has a variable length.
+     */
+    private static final int AI_RANGES[] = {
+        0, 0, 20,
+        1, 2, 16,
+        10, 10, -1,
+        11, 11, 9,
+        12, 13, 8,
+        15, 15, 8,
+        17, 17, 8,
+        20, 20, 4,
+        21, 23, -1,
+        30, 30, -1,
+        37, 37, -1,
+        90, 99, -1,
+        240, 241, -1,
+        250, 252, -1,
+        400, 401, -1,
+        402, 402, 20,
+        403, 403, -1,
+        410, 415, 16,
+        420, 421, -1,
+        422, 422, 6,
+        423, 423, -1,
+        424, 426, 6,
+        3100, 3699, 10,
+        3900, 3939, -1,
+        7001, 7001, 17,
+        7002, 7002, -1,
+        7030, 7039, -1,
+        8001, 8001, 18,
+        8002, 8004, -1,
+        8005, 8005, 10,
+        8006, 8006, 22,
+        8007, 8008, -1,
+        8018, 8018, 22,
+        8020, 8020, -1,
+        8100, 8100, 10,
+        8101, 8101, 14,
+        8102, 8102, 6
+    };
+    
+    /** The charsets in the optimal charset selection. */
+    private static final int SET_A = 0;
+    private static final int SET_B = 1;
+    private static final int SET_C = 2;
 
     /**
      * A possible value for paragraph alignment. This specifies that the text is
@@ -257,57 +327,6 @@ public class Barcode128 implements Barcode {
         }
     }
 
-    /** Returns <CODE>true</CODE> if the next <CODE>numDigits</CODE>
-     * starting from index <CODE>textIndex</CODE> are numeric skipping any FNC1.
-     * @param text the text to check
-     * @param textIndex where to check from
-     * @param numDigits the number of digits to check
-     * @return the check result
-     */
-    static boolean isNextDigits(String text, int textIndex, int numDigits) {
-        int len = text.length();
-        while (textIndex < len && numDigits > 0) {
-            if (text.charAt(textIndex) == FNC1) {
-                ++textIndex;
-                continue;
-            }
-            int n = Math.min(2, numDigits);
-            if (textIndex + n > len)
-                return false;
-            while (n-- > 0) {
-                char c = text.charAt(textIndex++);
-                if (c < '0' || c > '9')
-                    return false;
-                --numDigits;
-            }
-        }
-        return numDigits == 0;
-    }
-
-    /** Packs the digits for charset C also considering FNC1. It assumes that all the parameters
-     * are valid.
-     * @param text the text to pack
-     * @param textIndex where to pack from
-     * @param numDigits the number of digits to pack. It is always an even number
-     * @return the packed digits, two digits per character
-     */
-    static String getPackedRawDigits(String text, int textIndex, int numDigits) {
-        String out = "";
-        int start = textIndex;
-        while (numDigits > 0) {
-            if (text.charAt(textIndex) == FNC1) {
-                out += FNC1_INDEX;
-                ++textIndex;
-                continue;
-            }
-            numDigits -= 2;
-            int c1 = text.charAt(textIndex++) - '0';
-            int c2 = text.charAt(textIndex++) - '0';
-            out += (char)(c1 * 10 + c2);
-        }
-        return (char)(textIndex - start) + out;
-    }
-
     /** Converts the human readable text to the characters needed to
      * create a barcode. Some optimization is done to get the shortest code.
      * @param text the text to convert
@@ -316,13 +335,29 @@ public class Barcode128 implements Barcode {
      * @return the code ready to be fed to getBarsCode128Raw()
      */
     public static String getRawText(String text, boolean ucc) {
-        String out = "";
+        char out[] = new char[text.length() * 2 + 2];
+        return new String(out, 0, getRawText(text, ucc, out));
+    }
+
+    /** Converts the human readable text to the characters needed to
+     * create a barcode into a buffer supplied by the caller, in a single pass
+     * and without intermediate strings. The buffer can be reused from call to
+     * call and must hold <CODE>2 * text.length() + 2</CODE> characters; the part
+     * past the code is used as a work area.
+     * @param text the text to convert
+     * @param ucc <CODE>true</CODE> if it is an UCC/EAN-128. In this case
+     * the character FNC1 is added
+     * @param out the buffer that receives the code
+     * @return the number of characters of the code
+     */
+    public static int getRawText(CharSequence text, boolean ucc, char[] out) {
         int tLen = text.length();
+        int ptr = 0;
         if (tLen == 0) {
-            out += START_B;
+            out[ptr++] = START_B;
             if (ucc)
-                out += FNC1_INDEX;
-            return out;
+                out[ptr++] = FNC1_INDEX;
+            return ptr;
         }
         int c = 0;
         for (int k = 0; k < tLen; ++k) {
@@ -330,114 +365,256 @@ public class Barcode128 implements Barcode {
             if (c > 127 && c != FNC1)
                 throw new RuntimeException("There are illegal characters for barcode 128 in '" + text + "'.");
         }
+        // out[pairs + k] is the number of digit pairs, up to 2, that start at k
+        // skipping any FNC1. After reading the character at k at most 2 * k + 4
+        // characters of code were written so the counts ahead are never overwritten.
+        int pairs = tLen + 2;
+        int next1 = 0;
+        int next2 = 0;
+        for (int k = tLen - 1; k >= 0; --k) {
+            c = text.charAt(k);
+            int n;
+            if (c == FNC1)
+                n = next1;
+            else if (c >= '0' && c <= '9' && k + 1 < tLen && text.charAt(k + 1) >= '0' && text.charAt(k + 1) <= '9')
+                n = next2 < 2 ? next2 + 1 : 2;
+            else
+                n = 0;
+            out[pairs + k] = (char)n;
+            next2 = next1;
+            next1 = n;
+        }
         c = text.charAt(0);
         char currentCode = START_B;
         int index = 0;
-        if (isNextDigits(text, index, 2)) {
+        int pack = 0;
+        if (out[pairs] >= 1) {
             currentCode = START_C;
-            out += currentCode;
+            out[ptr++] = currentCode;
             if (ucc)
-                out += FNC1_INDEX;
-            String out2 = getPackedRawDigits(text, index, 2);
-            index += out2.charAt(0);
-            out += out2.substring(1);
+                out[ptr++] = FNC1_INDEX;
+            pack = 1;
         }
         else if (c < ' ') {
             currentCode = START_A;
-            out += currentCode;
+            out[ptr++] = currentCode;
             if (ucc)
-                out += FNC1_INDEX;
-            out += (char)(c + 64);
+                out[ptr++] = FNC1_INDEX;
+            out[ptr++] = (char)(c + 64);
             ++index;
         }
         else {
-            out += currentCode;
+            out[ptr++] = currentCode;
             if (ucc)
-                out += FNC1_INDEX;
+                out[ptr++] = FNC1_INDEX;
             if (c == FNC1)
-                out += FNC1_INDEX;
+                out[ptr++] = FNC1_INDEX;
             else
-                out += (char)(c - ' ');
+                out[ptr++] = (char)(c - ' ');
             ++index;
         }
-        while (index < tLen) {
+        for (;;) {
+            // packs the digit pairs for charset C, with the FNC1 before each pair
+            while (pack > 0) {
+                c = text.charAt(index++);
+                if (c == FNC1)
+                    out[ptr++] = FNC1_INDEX;
+                else {
+                    out[ptr++] = (char)((c - '0') * 10 + text.charAt(index++) - '0');
+                    --pack;
+                }
+            }
+            if (index >= tLen)
+                break;
             switch (currentCode) {
                 case START_A:
                     {
-                        if (isNextDigits(text, index, 4)) {
+                        if (out[pairs + index] >= 2) {
                             currentCode = START_C;
-                            out += CODE_AB_TO_C;
-                            String out2 = getPackedRawDigits(text, index, 4);
-                            index += out2.charAt(0);
-                            out += out2.substring(1);
+                            out[ptr++] = CODE_AB_TO_C;
+                            pack = 2;
                         }
                         else {
                             c = text.charAt(index++);
                             if (c == FNC1)
-                                out += FNC1_INDEX;
+                                out[ptr++] = FNC1_INDEX;
                             else if (c > '_') {
                                 currentCode = START_B;
-                                out += CODE_AC_TO_B;
-                                out += (char)(c - ' ');
+                                out[ptr++] = CODE_AC_TO_B;
+                                out[ptr++] = (char)(c - ' ');
                             }
                             else if (c < ' ')
-                                out += (char)(c + 64);
+                                out[ptr++] = (char)(c + 64);
                             else
-                                out += (char)(c - ' ');
+                                out[ptr++] = (char)(c - ' ');
                         }
                     }
                     break;
                 case START_B:
                     {
-                        if (isNextDigits(text, index, 4)) {
+                        if (out[pairs + index] >= 2) {
                             currentCode = START_C;
-                            out += CODE_AB_TO_C;
-                            String out2 = getPackedRawDigits(text, index, 4);
-                            index += out2.charAt(0);
-                            out += out2.substring(1);
+                            out[ptr++] = CODE_AB_TO_C;
+                            pack = 2;
                         }
                         else {
                             c = text.charAt(index++);
                             if (c == FNC1)
-                                out += FNC1_INDEX;
+                                out[ptr++] = FNC1_INDEX;
                             else if (c < ' ') {
                                 currentCode = START_A;
-                                out += CODE_BC_TO_A;
-                                out += (char)(c + 64);
+                                out[ptr++] = CODE_BC_TO_A;
+                                out[ptr++] = (char)(c + 64);
                             }
                             else {
-                                out += (char)(c - ' ');
+                                out[ptr++] = (char)(c - ' ');
                             }
                         }
                     }
                     break;
                 case START_C:
                     {
-                        if (isNextDigits(text, index, 2)) {
-                            String out2 = getPackedRawDigits(text, index, 2);
-                            index += out2.charAt(0);
-                            out += out2.substring(1);
-                        }
+                        if (out[pairs + index] >= 1)
+                            pack = 1;
                         else {
                             c = text.charAt(index++);
                             if (c == FNC1)
-                                out += FNC1_INDEX;
+                                out[ptr++] = FNC1_INDEX;
                             else if (c < ' ') {
                                 currentCode = START_A;
-                                out += CODE_BC_TO_A;
-                                out += (char)(c + 64);
+                                out[ptr++] = CODE_BC_TO_A;
+                                out[ptr++] = (char)(c + 64);
                             }
                             else {
                                 currentCode = START_B;
-                                out += CODE_AC_TO_B;
-                                out += (char)(c - ' ');
+                                out[ptr++] = CODE_AC_TO_B;
+                                out[ptr++] = (char)(c - ' ');
                             }
                         }
                     }
                     break;
             }
         }
-        return out;
+        return ptr;
+    }
+
+    /** Converts the human readable text to the characters needed to
+     * create a barcode with the least number of characters. The charsets,
+     * the charset changes and the shifts between the charsets A and B are
+     * chosen by dynamic programming over the position in the text and the
+     * current charset. The buffer is the same as in
+     * <CODE>getRawText(CharSequence, boolean, char[])</CODE>.
+     * @param text the text to convert
+     * @param ucc <CODE>true</CODE> if it is an UCC/EAN-128. In this case
+     * the character FNC1 is added
+     * @param out the buffer that receives the code
+     * @return the number of characters of the code
+     */
+    public static int getRawTextOptimal(CharSequence text, boolean ucc, char[] out) {
+        int tLen = text.length();
+        if (tLen == 0)
+            return getRawText(text, ucc, out);
+        int c;
+        for (int k = 0; k < tLen; ++k) {
+            c = text.charAt(k);
+            if (c > 127 && c != FNC1)
+                throw new RuntimeException("There are illegal characters for barcode 128 in '" + text + "'.");
+        }
+        // cost[3 * k + set] is the least number of characters to encode the text
+        // before k ending in the charset A, B or C; from[3 * k + set] is the
+        // charset in use before changing to set at k
+        int cost[] = new int[(tLen + 2) * 3];
+        byte from[] = new byte[(tLen + 1) * 3];
+        Arrays.fill(cost, Integer.MAX_VALUE / 2);
+        int start = ucc ? 2 : 1;
+        cost[SET_A] = cost[SET_B] = cost[SET_C] = start;
+        for (int k = 0; k <= tLen; ++k) {
+            int base = k * 3;
+            int a = cost[base + SET_A];
+            int b = cost[base + SET_B];
+            int cc = cost[base + SET_C];
+            from[base + SET_A] = SET_A;
+            from[base + SET_B] = SET_B;
+            from[base + SET_C] = SET_C;
+            if (k > 0) {
+                // a charset change costs one character, two changes in a row are never needed
+                changeCharset(cost, from, base, SET_A, b, SET_B, cc, SET_C);
+                changeCharset(cost, from, base, SET_B, a, SET_A, cc, SET_C);
+                changeCharset(cost, from, base, SET_C, a, SET_A, b, SET_B);
+            }
+            if (k == tLen)
+                break;
+            c = text.charAt(k);
+            int next = base + 3;
+            if (c == FNC1) {
+                cost[next + SET_A] = Math.min(cost[next + SET_A], cost[base + SET_A] + 1);
+                cost[next + SET_B] = Math.min(cost[next + SET_B], cost[base + SET_B] + 1);
+                cost[next + SET_C] = Math.min(cost[next + SET_C], cost[base + SET_C] + 1);
+                continue;
+            }
+            cost[next + SET_A] = Math.min(cost[next + SET_A], cost[base + SET_A] + (c < 96 ? 1 : 2));
+            cost[next + SET_B] = Math.min(cost[next + SET_B], cost[base + SET_B] + (c >= ' ' ? 1 : 2));
+            if (c >= '0' && c <= '9' && k + 1 < tLen) {
+                int c2 = text.charAt(k + 1);
+                if (c2 >= '0' && c2 <= '9')
+                    cost[next + 3 + SET_C] = Math.min(cost[next + 3 + SET_C], cost[base + SET_C] + 1);
+            }
+        }
+        int base = tLen * 3;
+        int set = SET_C;
+        if (cost[base + SET_B] <= cost[base + set])
+            set = SET_B;
+        if (cost[base + SET_A] < cost[base + set])
+            set = SET_A;
+        int total = cost[base + set];
+        int ptr = total;
+        int k = tLen;
+        // walks back from the end filling the buffer from its last character
+        while (k > 0) {
+            int f = from[k * 3 + set];
+            if (f != set) {
+                out[--ptr] = set == SET_A ? CODE_BC_TO_A : set == SET_B ? CODE_AC_TO_B : CODE_AB_TO_C;
+                set = f;
+            }
+            c = text.charAt(k - 1);
+            if (c == FNC1) {
+                out[--ptr] = FNC1_INDEX;
+                --k;
+            }
+            else if (set == SET_C) {
+                out[--ptr] = (char)((text.charAt(k - 2) - '0') * 10 + c - '0');
+                k -= 2;
+            }
+            else {
+                boolean inA = c < 96;
+                boolean inB = c >= ' ';
+                if (set == SET_A ? inA : inB)
+                    out[--ptr] = set == SET_A && c < ' ' ? (char)(c + 64) : (char)(c - ' ');
+                else
+                    out[--ptr] = set == SET_A ? (char)(c - ' ') : (char)(c + 64);
+                if (set == SET_A ? !inA : !inB)
+                    out[--ptr] = SHIFT_INDEX;
+                --k;
+            }
+        }
+        if (ucc)
+            out[--ptr] = FNC1_INDEX;
+        out[--ptr] = set == SET_A ? START_A : set == SET_B ? START_B : START_C;
+        return total;
+    }
+
+    /** Lowers the cost of a charset at a position by changing to it from
+     * one of the other two charsets.
+     */
+    private static void changeCharset(int[] cost, byte[] from, int base, int set, int cost1, int set1, int cost2, int set2) {
+        if (cost1 + 1 < cost[base + set]) {
+            cost[base + set] = cost1 + 1;
+            from[base + set] = (byte)set1;
+        }
+        if (cost2 + 1 < cost[base + set]) {
+            cost[base + set] = cost2 + 1;
+            from[base + set] = (byte)set2;
+        }
     }
 
     /** Generates the bars. The input has the actual barcodes, not
@@ -449,63 +626,158 @@ public class Barcode128 implements Barcode {
         int idx = text.indexOf('\uffff');
         if (idx >= 0)
             text = text.substring(0, idx);
-        int chk = text.charAt(0);
-        for (int k = 1; k < text.length(); ++k)
-            chk += k * text.charAt(k);
+        return getBarsCode128Raw(text.toCharArray(), text.length());
+    }
+
+    /** Generates the bars from the code in a buffer. The input has the actual
+     * barcodes, not the human readable text.
+     * @param code the buffer with the barcode
+     * @param length the number of characters of the barcode
+     * @return the bars
+     */
+    public static byte[] getBarsCode128Raw(char[] code, int length) {
+        int chk = code[0];
+        for (int k = 1; k < length; ++k)
+            chk += k * code[k];
         chk = chk % 103;
-        text += (char)chk;
-        byte bars[] = new byte[(text.length() + 1) * 6 + 7];
+        byte bars[] = new byte[(length + 2) * 6 + 7];
         int k;
-        for (k = 0; k < text.length(); ++k)
-            System.arraycopy(BARS[text.charAt(k)], 0, bars, k * 6, 6);
-        System.arraycopy(BARS_STOP, 0, bars, k * 6, 7);
+        for (k = 0; k < length; ++k)
+            System.arraycopy(BARS[code[k]], 0, bars, k * 6, 6);
+        System.arraycopy(BARS[chk], 0, bars, k * 6, 6);
+        System.arraycopy(BARS_STOP, 0, bars, (k + 1) * 6, 7);
         return bars;
     }
 
+    /** Generates the modules of the bars packed in a row of bits, eight
+     * modules per byte with the first module in the most significant bit and
+     * 1 for a bar. The row has <CODE>(length + 2) * 11 + 2</CODE> modules and
+     * the bits after the last module are 0. Each symbol is written as a whole
+     * 11 module pattern. The input has the actual barcodes, not the human
+     * readable text.
+     * @param code the buffer with the barcode
+     * @param length the number of characters of the barcode
+     * @param row the buffer that receives the modules or <CODE>null</CODE>.
+     * If it's too small a new one is allocated
+     * @return the row with the modules
+     */
+    public static byte[] getPackedBarsCode128Raw(char[] code, int length, byte[] row) {
+        int modules = (length + 2) * 11 + 2;
+        int size = (modules + 7) / 8;
+        if (row == null || row.length < size)
+            row = new byte[size];
+        int chk = code[0];
+        for (int k = 1; k < length; ++k)
+            chk += k * code[k];
+        chk = chk % 103;
+        long acc = 0;
+        int bits = 0;
+        int ptr = 0;
+        for (int k = 0; k <= length; ++k) {
+            acc = (acc << 11) | PATTERNS[k < length ? code[k] : chk];
+            bits += 11;
+            if (bits >= 32) {
+                bits -= 32;
+                int v = (int)(acc >>> bits);
+                row[ptr++] = (byte)(v >>> 24);
+                row[ptr++] = (byte)(v >>> 16);
+                row[ptr++] = (byte)(v >>> 8);
+                row[ptr++] = (byte)v;
+            }
+        }
+        acc = (acc << 13) | PATTERN_STOP;
+        bits += 13;
+        // pads the last byte with zeros
+        int pad = (8 - (bits & 7)) & 7;
+        acc <<= pad;
+        bits += pad;
+        while (bits > 0) {
+            bits -= 8;
+            row[ptr++] = (byte)(acc >>> bits);
+        }
+        return row;
+    }
+
+    /** Converts the widths of the bars and spaces of a symbol to modules.
+     * @param widths the widths starting with a bar
+     * @return the modules with the first one in the most significant bit
+     */
+    private static int getPattern(byte[] widths) {
+        int pattern = 0;
+        for (int k = 0; k < widths.length; ++k) {
+            int bit = (k & 1) == 0 ? 1 : 0;
+            for (int j = 0; j < widths[k]; ++j)
+                pattern = (pattern << 1) | bit;
+        }
+        return pattern;
+    }
+
     /** Creates a <CODE>java.awt.Image</CODE>. This image only
      * contains the bars without any text.
+     * <p>
+     * The image is a <CODE>BufferedImage</CODE> with one bit per module and
+     * each row stored on its own.
      * @param foreground the color of the bars
      * @param background the color of the background
      * @return the image
      */    
     public Image createAwtImage(Color foreground, Color background) {
-        int f = foreground.getRGB();
-        int g = background.getRGB();
-        Canvas canvas = new Canvas();
-        String bCode;
+        return createAwtImage(foreground, background, false);
+    }
+    
+    /** Creates a <CODE>java.awt.Image</CODE>. This image only
+     * contains the bars without any text.
+     * <p>
+     * With <CODE>shareRows</CODE> the image stores a single row and its raster
+     * has a scanline stride of 0 that reads that row for every line, so it
+     * takes <CODE>barHeight</CODE> times less memory. The rows are aliased:
+     * writing a pixel of the image, or drawing on it, changes the same pixel
+     * in all the rows. Use it only for images that are drawn and not changed.
+     * @param foreground the color of the bars
+     * @param background the color of the background
+     * @param shareRows <CODE>true</CODE> to store a single row shared by all
+     * the rows of the image
+     * @return the image
+     */    
+    public Image createAwtImage(Color foreground, Color background, boolean shareRows) {
+        int len;
+        char raw[];
         if (codeType == CODE128_RAW) {
             int idx = code.indexOf('\uffff');
-            if (idx >= 0)
-                bCode = code.substring(0, idx);
-            else
-                bCode = code;
+            len = idx >= 0 ? idx : code.length();
+            raw = new char[len];
+            code.getChars(0, len, raw, 0);
         }
         else {
-            bCode = getRawText(code, codeType == CODE128_UCC);
+            raw = new char[code.length() * 2 + 2];
+            if (optimalCharsets)
+                len = getRawTextOptimal(code, codeType == CODE128_UCC, raw);
+            else
+                len = getRawText(code, codeType == CODE128_UCC, raw);
         }
-        int len = bCode.length();
+        byte packed[] = getPackedBarsCode128Raw(raw, len, null);
         int fullWidth = (len + 2) * 11 + 2;
-        byte bars[] = getBarsCode128Raw(bCode);
         
-        boolean print = true;
-        int ptr = 0;
         int height = (int)barHeight;
-        int pix[] = new int[fullWidth * height];
-        for (int k = 0; k < bars.length; ++k) {
-            int w = bars[k];
-            int c = g;
-            if (print)
-                c = f;
-            print = !print;
-            for (int j = 0; j < w; ++j)
-                pix[ptr++] = c;
+        int stride = packed.length;
+        byte data[];
+        if (shareRows) {
+            // only one row is stored and the scanline stride of 0 repeats
+            // it for the full height
+            data = packed;
+            stride = 0;
         }
-        for (int k = fullWidth; k < pix.length; k += fullWidth) {
-            System.arraycopy(pix, 0, pix, k, fullWidth); 
+        else {
+            data = new byte[packed.length * height];
+            for (int k = 0; k < data.length; k += packed.length)
+                System.arraycopy(packed, 0, data, k, packed.length);
         }
-        Image img = canvas.createImage(new MemoryImageSource(fullWidth, height, pix, 0, fullWidth));
+        int colors[] = {background.getRGB(), foreground.getRGB()};
+        IndexColorModel model = new IndexColorModel(1, 2, colors, 0, true, -1, DataBuffer.TYPE_BYTE);
+        MultiPixelPackedSampleModel sample = new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, fullWidth, height, 1, stride, 0);
+        WritableRaster raster = Raster.createWritableRaster(sample, new DataBufferByte(data, data.length), null);
         
-        return img;
+        return new BufferedImage(model, raster, false, null);
     }
     
     /**
@@ -517,95 +789,152 @@ public class Barcode128 implements Barcode {
      */
     public void setCode(String code) {
         if (codeType == Barcode128.CODE128_UCC && code.startsWith("(")) {
-            int idx = 0;
-            String ret = "";
-            while (idx >= 0) {
-                int end = code.indexOf(')', idx);
-                if (end < 0)
-                    throw new IllegalArgumentException("Badly formed UCC string: " + code);
-                String sai = code.substring(idx + 1, end);
-                if (sai.length() < 2)
-                    throw new IllegalArgumentException("AI too short: (" + sai + ")");
-                int ai = Integer.parseInt(sai);
-                int len = ais.get(ai);
-                if (len == 0)
-                    throw new IllegalArgumentException("AI not found: (" + sai + ")");
-                sai = String.valueOf(ai);
-                if (sai.length() == 1)
-                    sai = "0" + sai;
-                idx = code.indexOf('(', end);
-                int next = (idx < 0 ? code.length() : idx);
-                ret += sai + code.substring(end + 1, next);
-                if (len < 0) {
-                    if (idx >= 0)
-                        ret += FNC1;
-                }
-                else if (next - end - 1 + sai.length() != len)
-                    throw new IllegalArgumentException("Invalid AI length: (" + sai + ")");
-            }
-            this.code = ret;
+            char out[] = new char[code.length()];
+            this.code = new String(out, 0, parseUCC(code, out));
         }
         else
             this.code = code;
     }
     
-    static {
-        ais.put(0, 20);
-        ais.put(1, 16);
-        ais.put(2, 16);
-        ais.put(10, -1);
-        ais.put(11, 9);
-        ais.put(12, 8);
-        ais.put(13, 8);
-        ais.put(15, 8);
-        ais.put(17, 8);
-        ais.put(20, 4);
-        ais.put(21, -1);
-        ais.put(22, -1);
-        ais.put(23, -1);
-        ais.put(240, -1);
-        ais.put(241, -1);
-        ais.put(250, -1);
-        ais.put(251, -1);
-        ais.put(252, -1);
-        ais.put(30, -1);
-        for (int k = 3100; k < 3700; ++k)
-            ais.put(k, 10);
-        ais.put(37, -1);
-        for (int k = 3900; k < 3940; ++k)
-            ais.put(k, -1);
-        ais.put(400, -1);
-        ais.put(401, -1);
-        ais.put(402, 20);
-        ais.put(403, -1);
-        for (int k = 410; k < 416; ++k)
-            ais.put(k, 16);
-        ais.put(420, -1);
-        ais.put(421, -1);
-        ais.put(422, 6);
-        ais.put(423, -1);
-        ais.put(424, 6);
-        ais.put(425, 6);
-        ais.put(426, 6);
-        ais.put(7001, 17);
-        ais.put(7002, -1);
-        for (int k = 7030; k < 7040; ++k)
-            ais.put(k, -1);
-        ais.put(8001, 18);
-        ais.put(8002, -1);
-        ais.put(8003, -1);
-        ais.put(8004, -1);
-        ais.put(8005, 10);
-        ais.put(8006, 22);
-        ais.put(8007, -1);
-        ais.put(8008, -1);
-        ais.put(8018, 22);
-        ais.put(8020, -1);
-        ais.put(8100, 10);
-        ais.put(8101, 14);
-        ais.put(8102, 6);
-        for (int k = 90; k < 100; ++k)
-            ais.put(k, -1);
+    /**
+     * Sets the UCC code to generate from the application identifiers and
+     * their data. The code type should be <CODE>CODE128_UCC</CODE>.
+     * @param ais the application identifiers, for example 1 for (01)
+     * @param values the data of each application identifier
+     * @see #packUCC(int[], CharSequence[], char[])
+     */
+    public void setCode(int[] ais, CharSequence[] values) {
+        int size = 0;
+        for (int k = 0; k < values.length; ++k)
+            size += values[k].length() + 5;
+        char out[] = new char[size];
+        this.code = new String(out, 0, packUCC(ais, values, out));
+    }
+    
+    /** Gets the length of an application identifier and its data.
+     * @param ai the application identifier
+     * @return the length, -1 if the data has a variable length or 0 if the
+     * application identifier is not known
+     */
+    static int getAILength(int ai) {
+        int lo = 0;
+        int hi = AI_RANGES.length / 3 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int k = mid * 3;
+            if (ai < AI_RANGES[k])
+                hi = mid - 1;
+            else if (ai > AI_RANGES[k + 1])
+                lo = mid + 1;
+            else
+                return AI_RANGES[k + 2];
+        }
+        return 0;
+    }
+    
+    /** Converts an UCC code split by AI, like <code>(01)00000090311314(10)ABC123(15)060916</code>,
+     * to the text of the barcode in a single pass. The AI are validated and the
+     * fixed length data checked, FNC1 is added after the variable length data
+     * that is followed by more data. The AI is read with
+     * <CODE>Integer.parseInt()</CODE>, so <code>(+1)</code> is the AI 01.
+     * @param code the code starting with '('
+     * @param out the buffer that receives the text, it must hold <CODE>code.length()</CODE> characters
+     * @return the number of characters of the text
+     * @throws NumberFormatException if the AI is not a number
+     */
+    public static int parseUCC(CharSequence code, char[] out) {
+        int len = code.length();
+        if (len == 0 || code.charAt(0) != '(')
+            throw new IllegalArgumentException("Badly formed UCC string: " + code);
+        int ptr = 0;
+        int idx = 0;
+        while (idx < len) {
+            int end = idx + 1;
+            while (end < len && code.charAt(end) != ')')
+                ++end;
+            if (end == len)
+                throw new IllegalArgumentException("Badly formed UCC string: " + code);
+            if (end - idx - 1 < 2)
+                throw new IllegalArgumentException("AI too short: (" + code.subSequence(idx + 1, end) + ")");
+            int ai = 0;
+            for (int k = idx + 1; k < end; ++k) {
+                char c = code.charAt(k);
+                if (c < '0' || c > '9' || ai > 99999) {
+                    // a sign or a large number, parsed like it always was
+                    ai = Integer.parseInt(code.subSequence(idx + 1, end).toString());
+                    break;
+                }
+                ai = ai * 10 + c - '0';
+            }
+            int aiLength = getAILength(ai);
+            if (aiLength == 0)
+                throw new IllegalArgumentException("AI not found: (" + code.subSequence(idx + 1, end) + ")");
+            int start = ptr;
+            int aiEnd = putAI(ai, out, ptr);
+            ptr = aiEnd;
+            int next = end + 1;
+            while (next < len && code.charAt(next) != '(')
+                out[ptr++] = code.charAt(next++);
+            if (aiLength < 0) {
+                if (next < len)
+                    out[ptr++] = FNC1;
+            }
+            else if (ptr - start != aiLength)
+                throw new IllegalArgumentException("Invalid AI length: (" + new String(out, start, aiEnd - start) + ")");
+            idx = next;
+        }
+        return ptr;
+    }
+    
+    /** Converts the application identifiers and their data to the text of an
+     * UCC barcode without building the code split by AI. The AI are validated
+     * and the fixed length data checked, FNC1 is added after the variable length
+     * data that is followed by more data.
+     * @param ais the application identifiers, for example 1 for (01)
+     * @param values the data of each application identifier
+     * @param out the buffer that receives the text, it must hold the AI, the
+     * data and a FNC1 for each application identifier
+     * @return the number of characters of the text
+     */
+    public static int packUCC(int[] ais, CharSequence[] values, char[] out) {
+        if (ais.length != values.length)
+            throw new IllegalArgumentException("The number of AI and values must be the same.");
+        int ptr = 0;
+        for (int k = 0; k < ais.length; ++k) {
+            int ai = ais[k];
+            int aiLength = ai < 0 ? 0 : getAILength(ai);
+            if (aiLength == 0)
+                throw new IllegalArgumentException("AI not found: (" + ai + ")");
+            int start = ptr;
+            int aiEnd = putAI(ai, out, ptr);
+            ptr = aiEnd;
+            CharSequence value = values[k];
+            int n = value.length();
+            for (int j = 0; j < n; ++j)
+                out[ptr++] = value.charAt(j);
+            if (aiLength < 0) {
+                if (k < ais.length - 1)
+                    out[ptr++] = FNC1;
+            }
+            else if (ptr - start != aiLength)
+                throw new IllegalArgumentException("Invalid AI length: (" + new String(out, start, aiEnd - start) + ")");
+        }
+        return ptr;
+    }
+    
+    /** Writes the digits of an application identifier, at least two.
+     * @param ai the application identifier
+     * @param out the buffer
+     * @param ptr the position of the first digit
+     * @return the position after the last digit
+     */
+    private static int putAI(int ai, char[] out, int ptr) {
+        int digits = ai < 100 ? 2 : ai < 1000 ? 3 : ai < 10000 ? 4 : ai < 100000 ? 5 : 6;
+        for (int k = ptr + digits - 1; k >= ptr; --k) {
+            out[k] = (char)('0' + ai % 10);
+            ai /= 10;
+        }
+        return ptr + digits;
     }
 
     /** The height of the bars.
@@ -684,4 +1013,25 @@ public class Barcode128 implements Barcode {
     /** The code type.
      */
     protected int codeType;
+
+    /** Choose the charsets that give the least number of characters.
+     */
+    protected boolean optimalCharsets;
+
+    /** Gets the property to choose the charsets that give the least number
+     * of characters.
+     * @return value of property optimalCharsets
+     */
+    public boolean isOptimalCharsets() {
+        return optimalCharsets;
+    }
+
+    /** Sets the property to choose the charsets that give the least number
+     * of characters with <CODE>getRawTextOptimal</CODE> instead of switching
+     * to a charset as soon as it's needed.
+     * @param optimalCharsets new value of property optimalCharsets
+     */
+    public void setOptimalCharsets(boolean optimalCharsets) {
+        this.optimalCharsets = optimalCharsets;
+    }
 }
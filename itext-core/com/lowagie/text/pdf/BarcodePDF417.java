@@ -51,7 +51,12 @@ package com.lowagie.text.pdf;
 import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.image.MemoryImageSource;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Generates the 2D barcode PDF417. Supports dimensioning auto-sizing, fixed
  * and variable sizes, automatic and manual error levels, raw codeword input,
@@ -97,11 +102,24 @@ public class BarcodePDF417 {
      * @see #setMacroSegmentCount(int)
      */    
     public static final int PDF417_USE_MACRO = 256;
+    /** The text is split into text, numeric and byte segments with the
+     * least total number of codewords, including the mode latches and
+     * the text sub-mode latches and shifts. It is slower than the default
+     * segmentation and has no effect with <CODE>PDF417_FORCE_BINARY</CODE>.
+     */
+    public static final int PDF417_OPTIMAL_SEGMENTATION = 512;
+    /** The text segments are compacted with the least number of codewords,
+     * choosing the text sub-mode latches and shifts over the whole segment
+     * instead of looking ahead two characters. It is implied by
+     * <CODE>PDF417_OPTIMAL_SEGMENTATION</CODE>.
+     */
+    public static final int PDF417_OPTIMAL_TEXT = 1024;
     
 
     private int macroSegmentCount=0;
     private int macroSegmentId=-1;
     private String macroFileId;
+    private int[] macroFileIdTypes;
     private int macroIndex;
     protected int bitPtr;
     protected int cwPtr;
@@ -136,8 +154,39 @@ public class BarcodePDF417 {
      * @param id the file id
      */
     public void setMacroFileId(String id) {
+        if (id == null)
+            macroFileIdTypes = null;
+        else if (!id.equals(macroFileId)) {
+            byte bytes[] = PdfEncodings.convertToBytes(id, "cp437");
+            macroFileIdTypes = new int[bytes.length];
+            classify(bytes, 0, bytes.length, macroFileIdTypes, 0);
+        }
         this.macroFileId = id;        
     }
+
+    /**
+     * Gets the segment id for macro PDF417 encoding
+     * @return the segment id
+     */
+    public int getMacroSegmentId() {
+        return this.macroSegmentId;
+    }
+    
+    /**
+     * Gets the segment count for macro PDF417 encoding
+     * @return the number of macro segments
+     */
+    public int getMacroSegmentCount() {
+        return this.macroSegmentCount;
+    }
+    
+    /**
+     * Gets the File ID for macro PDF417 encoding
+     * @return the file id
+     */
+    public String getMacroFileId() {
+        return this.macroFileId;
+    }
        
     protected boolean checkSegmentType(Segment segment, char type) {
         if (segment == null)
@@ -151,28 +200,60 @@ public class BarcodePDF417 {
         return segment.end - segment.start;
     }
     
+    protected boolean checkSegmentType(int idx, char type) {
+        if (idx < 0 || idx >= segmentList.size())
+            return false;
+        return segmentList.type[idx] == type;
+    }
+    
+    protected int getSegmentLength(int idx) {
+        if (idx < 0 || idx >= segmentList.size())
+            return 0;
+        return segmentList.end[idx] - segmentList.start[idx];
+    }
+    
     /** Set the default settings that correspond to <CODE>PDF417_USE_ASPECT_RATIO</CODE>
      * and <CODE>PDF417_AUTO_ERROR_LEVEL</CODE>.
      */    
     public void setDefaultParameters() {
         options = 0;
         outBits = null;
-        text = new byte[0];
+        setText(new byte[0]);
         yHeight = 3;
         aspectRatio = 0.5f;
     }
 
     protected void outCodeword17(int codeword) {
+        bitPtr = putCodeword17(outBits, bitPtr, codeword);
+    }
+
+    protected void outCodeword18(int codeword) {
+        bitPtr = putCodeword18(outBits, bitPtr, codeword);
+    }
+
+    protected void outCodeword(int codeword) {
+        outCodeword17(codeword);
+    }
+
+    protected void outStopPattern() {
+        outCodeword18(STOP_PATTERN);
+    }
+
+    protected void outStartPattern() {
+        outCodeword17(START_PATTERN);
+    }
+
+    private static int putCodeword17(byte[] outBits, int bitPtr, int codeword) {
         int bytePtr = bitPtr / 8;
         int bit = bitPtr - bytePtr * 8;
         outBits[bytePtr++] |= codeword >> (9 + bit);
         outBits[bytePtr++] |= codeword >> (1 + bit);
         codeword <<= 8;
         outBits[bytePtr] |= codeword >> (1 + bit);
-        bitPtr += 17;
+        return bitPtr + 17;
     }
 
-    protected void outCodeword18(int codeword) {
+    private static int putCodeword18(byte[] outBits, int bitPtr, int codeword) {
         int bytePtr = bitPtr / 8;
         int bit = bitPtr - bytePtr * 8;
         outBits[bytePtr++] |= codeword >> (10 + bit);
@@ -181,93 +262,184 @@ public class BarcodePDF417 {
         outBits[bytePtr] |= codeword >> (2 + bit);
         if (bit == 7)
             outBits[++bytePtr] |= 0x80;
-        bitPtr += 18;
-    }
-
-    protected void outCodeword(int codeword) {
-        outCodeword17(codeword);
-    }
-
-    protected void outStopPattern() {
-        outCodeword18(STOP_PATTERN);
-    }
-
-    protected void outStartPattern() {
-        outCodeword17(START_PATTERN);
+        return bitPtr + 18;
     }
 
     protected void outPaintCode() {
-        int codePtr = 0;
         bitColumns = START_CODE_SIZE * (codeColumns + 3) + STOP_SIZE;
         int lenBits = ((bitColumns - 1) / 8 + 1) * codeRows;
-        outBits = new byte[lenBits];
-        for (int row = 0; row < codeRows; ++row) {
-            bitPtr = ((bitColumns - 1) / 8 + 1) * 8 * row;
+        if (outBits == null || outBits.length < lenBits)
+            outBits = new byte[lenBits];
+        if (paintExecutor != null && codeRows * codeColumns >= PARALLEL_PAINT_CODEWORDS)
+            paintRowsParallel();
+        else
+            paintRows(0, codeRows);
+    }
+    
+    /** Paints a range of rows. Each row only depends on its index and its
+     * codewords and starts at a byte boundary, so ranges of rows can be
+     * painted concurrently. The patterns are shifted into a 64 bit register
+     * that is flushed 32 bits at a time, inverted if requested, and every
+     * byte of the rows is written.
+     * @param first the first row
+     * @param last the row after the last row
+     */
+    private void paintRows(int first, int last) {
+        byte out[] = outBits;
+        int rowBytes = (bitColumns - 1) / 8 + 1;
+        int codePtr = first * codeColumns;
+        int invert = (options & PDF417_INVERT_BITMAP) != 0 ? -1 : 0;
+        for (int row = first; row < last; ++row) {
+            int ptr = rowBytes * row;
             int rowMod = row % 3;
             int cluster[] = CLUSTERS[rowMod];
-            outStartPattern();
-            int edge = 0;
+            int left, right;
             switch (rowMod) {
             case 0:
-                edge = 30 * (row / 3) + ((codeRows - 1) / 3);
+                left = 30 * (row / 3) + ((codeRows - 1) / 3);
+                right = 30 * (row / 3) + codeColumns - 1;
                 break;
             case 1:
-                edge = 30 * (row / 3) + errorLevel * 3 + ((codeRows - 1) % 3);
+                left = 30 * (row / 3) + errorLevel * 3 + ((codeRows - 1) % 3);
+                right = 30 * (row / 3) + ((codeRows - 1) / 3);
                 break;
             default:
-                edge = 30 * (row / 3) + codeColumns - 1;
+                left = 30 * (row / 3) + codeColumns - 1;
+                right = 30 * (row / 3) + errorLevel * 3 + ((codeRows - 1) % 3);
                 break;
             }
-            outCodeword(cluster[edge]);
-
-            for (int column = 0; column < codeColumns; ++column) {
-                outCodeword(cluster[codewords[codePtr++]]);
+            long acc = ((long)START_PATTERN << 17) | cluster[left];
+            int bits = 2 * START_CODE_SIZE;
+            for (int column = 0; column <= codeColumns; ++column) {
+                if (bits >= 32) {
+                    bits -= 32;
+                    int w = (int)(acc >>> bits) ^ invert;
+                    out[ptr++] = (byte)(w >>> 24);
+                    out[ptr++] = (byte)(w >>> 16);
+                    out[ptr++] = (byte)(w >>> 8);
+                    out[ptr++] = (byte)w;
+                }
+                acc = (acc << 17) | cluster[column < codeColumns ? codewords[codePtr++] : right];
+                bits += START_CODE_SIZE;
             }
-
-            switch (rowMod) {
-            case 0:
-                edge = 30 * (row / 3) + codeColumns - 1;
-                break;
-            case 1:
-                edge = 30 * (row / 3) + ((codeRows - 1) / 3);
-                break;
-            default:
-                edge = 30 * (row / 3) + errorLevel * 3 + ((codeRows - 1) % 3);
-                break;
+            if (bits >= 32) {
+                bits -= 32;
+                int w = (int)(acc >>> bits) ^ invert;
+                out[ptr++] = (byte)(w >>> 24);
+                out[ptr++] = (byte)(w >>> 16);
+                out[ptr++] = (byte)(w >>> 8);
+                out[ptr++] = (byte)w;
+            }
+            acc = (acc << STOP_SIZE) | STOP_PATTERN;
+            bits += STOP_SIZE;
+            while (bits >= 8) {
+                bits -= 8;
+                out[ptr++] = (byte)((acc >>> bits) ^ invert);
+            }
+            if (bits > 0)
+                out[ptr] = (byte)((acc << (8 - bits)) ^ invert);
+        }
+    }
+    
+    /** Paints bands of rows in <CODE>paintExecutor</CODE> and in the calling
+     * thread. A band is painted by the first thread that claims it and the
+     * calling thread claims bands until none is left, so it only waits for
+     * bands that are already being painted. It never waits for a task still
+     * queued in the executor and doesn't deadlock when it runs in a thread of
+     * that same executor.
+     */
+    private void paintRowsParallel() {
+        int bands = (codeRows - 1) / PAINT_BAND_ROWS + 1;
+        RowPainter painter = new RowPainter(bands);
+        try {
+            for (int k = 1; k < bands; ++k)
+                paintExecutor.submit(painter);
+        }
+        catch (RejectedExecutionException e) {
+            // the calling thread paints the bands left
+        }
+        painter.run();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    painter.done.await();
+                    break;
+                }
+                catch (InterruptedException e) {
+                    // the bitmap must be complete, wait again
+                    interrupted = true;
+                }
             }
-            outCodeword(cluster[edge]);
-            outStopPattern();
         }
-        if ((options & PDF417_INVERT_BITMAP) != 0) {
-            for (int k = 0; k < outBits.length; ++k)
-                outBits[k] ^= 0xff;
+        finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        Throwable cause = painter.error;
+        if (cause instanceof RuntimeException)
+            throw (RuntimeException)cause;
+        if (cause instanceof Error)
+            throw (Error)cause;
+    }
+    
+    private class RowPainter implements Runnable {
+        private final int bands;
+        private final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch done;
+        volatile Throwable error;
+        
+        RowPainter(int bands) {
+            this.bands = bands;
+            done = new CountDownLatch(bands);
+        }
+        
+        public void run() {
+            int band;
+            while ((band = next.getAndIncrement()) < bands) {
+                try {
+                    paintRows(band * PAINT_BAND_ROWS, Math.min(codeRows, (band + 1) * PAINT_BAND_ROWS));
+                }
+                catch (Throwable e) {
+                    error = e;
+                }
+                finally {
+                    done.countDown();
+                }
+            }
         }
     }
 
     protected void calculateErrorCorrection(int dest) {
         if (errorLevel < 0 || errorLevel > 8)
             errorLevel = 0;
-        int A[] = ERROR_LEVEL[errorLevel];
+        int A[] = ERROR_LEVEL_LOG[errorLevel];
         int Alength = 2 << errorLevel;
         for (int k = 0; k < Alength; ++k)
             codewords[dest + k] = 0;
         int lastE = Alength - 1;
         for (int k = 0; k < lenCodewords; ++k) {
-            int t1 = codewords[k] + codewords[dest];
-            for (int e = 0; e <= lastE; ++e) {
-                int t2 = (t1 * A[lastE - e]) % MOD;
-                int t3 = MOD - t2;
-                codewords[dest + e] = ((e == lastE ? 0 : codewords[dest + e + 1]) + t3) % MOD;
+            int t1 = (codewords[k] + codewords[dest]) % MOD;
+            if (t1 == 0) {
+                // all the products are zero, the remainder is only shifted
+                System.arraycopy(codewords, dest + 1, codewords, dest, lastE);
+                codewords[dest + lastE] = 0;
+                continue;
+            }
+            int logT1 = GF_LOG[t1];
+            for (int e = 0; e < lastE; ++e) {
+                int t3 = codewords[dest + e + 1] - GF_EXP[logT1 + A[e]];
+                codewords[dest + e] = t3 < 0 ? t3 + MOD : t3;
             }
+            codewords[dest + lastE] = MOD - GF_EXP[logT1 + A[lastE]];
+        }
+        for (int k = 0; k < Alength; ++k) {
+            int t3 = codewords[dest + k];
+            codewords[dest + k] = t3 == 0 ? 0 : MOD - t3;
         }
-        for (int k = 0; k < Alength; ++k)
-            codewords[dest + k] = (MOD - codewords[dest + k]) % MOD;
     }
     
-    private static int getTextTypeAndValue(byte[] input, int maxLength, int idx) {
-        if (idx >= maxLength)
-            return 0;
-        char c = (char)(input[idx] & 0xff);
+    private static int getTextTypeAndValue(char c) {
         if (c >= 'A' && c <= 'Z')
             return (ALPHA + c - 'A');
         if (c >= 'a' && c <= 'z')
@@ -285,21 +457,108 @@ public class BarcodePDF417 {
         return (PUNCTUATION + ps);
     }
     
+    private static int getTextType(int[] types, int maxLength, int idx) {
+        if (idx >= maxLength)
+            return 0;
+        return types[idx];
+    }
+    
+    /** Classifies the input bytes for the text compaction.
+     * @param input the bytes to classify
+     * @param offset the first byte to classify
+     * @param length the number of bytes to classify
+     * @param types the type and value of each byte as returned by <CODE>getTextTypeAndValue</CODE>
+     * @param dest the position in <CODE>types</CODE> of the first byte
+     */
+    private static void classify(byte[] input, int offset, int length, int[] types, int dest) {
+        for (int k = 0; k < length; ++k)
+            types[dest + k] = TEXT_TYPE_AND_VALUE[input[offset + k] & 0xff];
+    }
+    
+    /** Makes a single pass over the text and stores the type and value
+     * of each byte in <CODE>textTypes</CODE> and the number of consecutive
+     * digits starting at each byte in <CODE>digitRuns</CODE>.
+     * The segmentation and the compaction only use these arrays to
+     * classify the text. The prefix of <CODE>template</CODE> is copied
+     * from it and only the bytes after it are read.
+     */
+    protected void classifyText() {
+        if (textTypes == null || textTypes.length < textLength + 1) {
+            int size = Math.max(textLength, ABSOLUTE_MAX_TEXT_SIZE) + 1;
+            textTypes = new int[size];
+            digitRuns = new int[size];
+        }
+        BarcodePDF417Template tp = template;
+        int first = 0;
+        if (tp != null && tp.prefixTypes != null)
+            first = tp.getPrefixLength();
+        classify(text, textOffset + first, textLength - first, textTypes, first);
+        int run = 0;
+        digitRuns[textLength] = 0;
+        for (int k = textLength - 1; k >= first; --k) {
+            int c = text[textOffset + k];
+            if (c >= '0' && c <= '9')
+                ++run;
+            else
+                run = 0;
+            digitRuns[k] = run;
+        }
+        if (first > 0) {
+            System.arraycopy(tp.prefixTypes, 0, textTypes, 0, first);
+            System.arraycopy(tp.prefixRuns, 0, digitRuns, 0, first);
+            // the trailing digits of the prefix go on in the bytes after it
+            for (int k = first - 1; run > 0 && k >= 0 && digitRuns[k] == first - k; --k)
+                digitRuns[k] += run;
+        }
+    }
+    
     protected int getTextTypeAndValue(int maxLength, int idx) {
-        return getTextTypeAndValue(text, maxLength,idx);
+        if (idx >= maxLength)
+            return 0;
+        return TEXT_TYPE_AND_VALUE[text[textOffset + idx] & 0xff];
     }
     
-    private void textCompaction(byte[] input, int start, int length) {
-        int dest[] = new int[ABSOLUTE_MAX_TEXT_SIZE * 2];
-        int mode = ALPHA;
-        int ptr = 0;
-        int fullBytes = 0;
+    private void textCompaction(int[] types, int start, int length) {
+        if (textBuffer == null)
+            textBuffer = new int[ABSOLUTE_MAX_TEXT_SIZE * 2];
+        if ((options & (PDF417_OPTIMAL_TEXT | PDF417_OPTIMAL_SEGMENTATION)) != 0) {
+            textCompactionOptimal(types, start, length);
+            return;
+        }
+        int k = start;
+        int end = start + length;
+        BarcodePDF417Template tp = template;
+        textMode = ALPHA;
+        textPtr = 0;
+        textFullBytes = 0;
+        if (tp != null && tp.textDest != null && types == textTypes && start == tp.textStart && end >= tp.getPrefixLength()) {
+            k = tp.textResume;
+            textMode = tp.textMode;
+            textPtr = tp.textPtr;
+            textFullBytes = tp.textFullBytes;
+            System.arraycopy(tp.textDest, 0, textBuffer, 0, textPtr);
+        }
+        greedyText(types, k, end, end);
+        packText(textPtr, textFullBytes);
+    }
+    
+    /** Continues the greedy text compaction in <CODE>textBuffer</CODE> from the
+     * state in <CODE>textMode</CODE>, <CODE>textPtr</CODE> and <CODE>textFullBytes</CODE>
+     * and saves the new state there. The state before a character only depends on
+     * the characters before it and the two after it.
+     * @param types the type and value of each byte
+     * @param k the first character
+     * @param stop the character to stop at
+     * @param length the end of the segment
+     */
+    private void greedyText(int[] types, int k, int stop, int length) {
+        int dest[] = textBuffer;
+        int mode = textMode;
+        int ptr = textPtr;
+        int fullBytes = textFullBytes;
         int v = 0;
-        int k;
-        int size;
-        length += start;
-        for (k = start; k < length; ++k) {
-            v = getTextTypeAndValue(input, length, k);
+        for (; k < stop; ++k) {
+            v = types[k];
             if ((v & mode) != 0) {
                 dest[ptr++] = v & 0xff;
                 continue;
@@ -327,7 +586,7 @@ public class BarcodePDF417 {
                     dest[ptr++] = v & 0xff;
                     mode = MIXED;
                 }
-                else if ((getTextTypeAndValue(input, length, k + 1) & getTextTypeAndValue(input, length, k + 2) & PUNCTUATION) != 0) {
+                else if ((getTextType(types, length, k + 1) & getTextType(types, length, k + 2) & PUNCTUATION) != 0) {
                     dest[ptr++] = ML;
                     dest[ptr++] = PL;
                     dest[ptr++] = v & 0xff;
@@ -340,7 +599,7 @@ public class BarcodePDF417 {
                 break;
             case LOWER:
                 if ((v & ALPHA) != 0) {
-                    if ((getTextTypeAndValue(input, length, k + 1) & getTextTypeAndValue(input, length, k + 2) & ALPHA) != 0) {
+                    if ((getTextType(types, length, k + 1) & getTextType(types, length, k + 2) & ALPHA) != 0) {
                         dest[ptr++] = ML;
                         dest[ptr++] = AL;
                         mode = ALPHA;
@@ -355,7 +614,7 @@ public class BarcodePDF417 {
                     dest[ptr++] = v & 0xff;
                     mode = MIXED;
                 }
-                else if ((getTextTypeAndValue(input, length, k + 1) & getTextTypeAndValue(input, length, k + 2) & PUNCTUATION) != 0) {
+                else if ((getTextType(types, length, k + 1) & getTextType(types, length, k + 2) & PUNCTUATION) != 0) {
                     dest[ptr++] = ML;
                     dest[ptr++] = PL;
                     dest[ptr++] = v & 0xff;
@@ -377,7 +636,7 @@ public class BarcodePDF417 {
                     dest[ptr++] = v & 0xff;
                     mode = ALPHA;
                 }
-                else if ((getTextTypeAndValue(input, length, k + 1) & getTextTypeAndValue(input, length, k + 2) & PUNCTUATION) != 0) {
+                else if ((getTextType(types, length, k + 1) & getTextType(types, length, k + 2) & PUNCTUATION) != 0) {
                     dest[ptr++] = PL;
                     dest[ptr++] = v & 0xff;
                     mode = PUNCTUATION;
@@ -394,13 +653,154 @@ public class BarcodePDF417 {
                 break;
             }
         }
+        textMode = mode;
+        textPtr = ptr;
+        textFullBytes = fullBytes;
+    }
+    
+    /** Compacts a text segment with the least number of half codewords.
+     * The cost of every prefix of the segment is computed for each text
+     * sub-mode with an even or odd number of half codewords. Each character
+     * can be preceded by a latch to any sub-mode and is then either in that
+     * sub-mode, shifted or byte shifted.
+     * @param types the type and value of each byte
+     * @param start the start of the segment
+     * @param length the length of the segment
+     */
+    private void textCompactionOptimal(int[] types, int start, int length) {
+        int size = (length + 1) * 8;
+        int k = 0;
+        BarcodePDF417Template tp = template;
+        if (tp != null && tp.textCost != null && types == textTypes && start == tp.textStart && start + length >= tp.getPrefixLength()) {
+            // the costs up to the prefix only depend on the prefix
+            k = tp.textResume - start;
+            int rows = (k + 1) * 8;
+            prepareOpt(size, rows);
+            System.arraycopy(tp.textCost, 0, optCost, 0, rows);
+            System.arraycopy(tp.textFrom, 0, optFrom, 0, rows);
+        }
+        else {
+            prepareOpt(size, 0);
+            optCost[0] = 0;
+        }
+        textDp(types, start, k, length);
+        int cost[] = optCost;
+        int from[] = optFrom;
+        int base = length * 8;
+        int best = base;
+        int bestCost = Integer.MAX_VALUE;
+        for (int state = 0; state < 8; ++state) {
+            int c = cost[base + state];
+            if (c != Integer.MAX_VALUE && c + (state & 1) < bestCost) {
+                bestCost = c + (state & 1);
+                best = base + state;
+            }
+        }
+        if (bestCost / 2 + cwPtr > MAX_DATA_CODEWORDS) {
+            throw new IndexOutOfBoundsException("The text is too big.");
+        }
+        // walk back, keeping the step to each character in the start of the costs
+        for (k = length - 1; k >= 0; --k) {
+            int link = from[best];
+            cost[k] = link;
+            best = link >> 3;
+        }
+        int dest[] = textBuffer;
+        int mode = 0;
+        int ptr = 0;
+        int fullBytes = 0;
+        for (k = 0; k < length; ++k) {
+            int link = cost[k];
+            int t = link & 3;
+            int v = types[start + k];
+            int latch[] = TEXT_LATCH_CODES[mode][t];
+            for (int j = 0; j < latch.length; ++j)
+                dest[ptr++] = latch[j];
+            mode = t;
+            if ((v & ISBYTE) != 0) {
+                if ((ptr & 1) != 0) {
+                    dest[ptr++] = PAL;
+                    if (mode == 3)
+                        mode = 0;
+                }
+                dest[ptr++] = BYTESHIFT;
+                fullBytes += 2;
+            }
+            else if ((link & 4) != 0)
+                dest[ptr++] = (v & PUNCTUATION) != 0 ? PS : AS;
+            dest[ptr++] = v & 0xff;
+        }
+        packText(ptr, fullBytes);
+    }
+    
+    /** Makes room for <CODE>size</CODE> costs and clears them from <CODE>from</CODE>.
+     * @param size the number of costs
+     * @param from the first cost to clear
+     */
+    private void prepareOpt(int size, int from) {
+        if (optCost == null || optCost.length < size) {
+            optCost = new int[size];
+            optFrom = new int[size];
+        }
+        Arrays.fill(optCost, from, size, Integer.MAX_VALUE);
+    }
+    
+    /** Computes the costs of the optimal text compaction after the characters
+     * from <CODE>first</CODE> to <CODE>last</CODE> of a segment. The costs
+     * after <CODE>first</CODE> must be known.
+     * @param types the type and value of each byte
+     * @param start the start of the segment
+     * @param first the first character, relative to the segment
+     * @param last the end, relative to the segment
+     */
+    private void textDp(int[] types, int start, int first, int last) {
+        int cost[] = optCost;
+        for (int k = first; k < last; ++k) {
+            int base = k * 8;
+            int next = base + 8;
+            int v = types[start + k];
+            for (int state = 0; state < 8; ++state) {
+                int c = cost[base + state];
+                if (c == Integer.MAX_VALUE)
+                    continue;
+                int mode = state >> 1;
+                int odd = state & 1;
+                for (int t = 0; t < 4; ++t) {
+                    int h = TEXT_LATCH[mode][t];
+                    int p = (odd + h) & 1;
+                    int link = ((base + state) << 3) | t;
+                    h += c;
+                    if ((v & ISBYTE) != 0) {
+                        // padded to a full codeword, the padding latches from punctuation to alpha
+                        int m = p != 0 && t == 3 ? 0 : t;
+                        relax(next + (m << 1), h + p + 4, link);
+                    }
+                    else {
+                        if ((v & (ALPHA << t)) != 0)
+                            relax(next + (t << 1) + (p ^ 1), h + 1, link);
+                        if (((v & PUNCTUATION) != 0 && t != 3) || ((v & ALPHA) != 0 && t == 1))
+                            relax(next + (t << 1) + p, h + 2, link | 4);
+                    }
+                }
+            }
+        }
+    }
+    
+    /** Pads the compacted text in <CODE>textBuffer</CODE> to a full codeword
+     * and packs it in the codewords.
+     * @param ptr the number of half codewords and byte shifted values
+     * @param fullBytes the number of byte shifted values counted twice
+     */
+    private void packText(int ptr, int fullBytes) {
+        int dest[] = textBuffer;
+        int v;
         if ((ptr & 1) != 0)
             dest[ptr++] = PS;
-        size = (ptr + fullBytes) / 2;
+        int size = (ptr + fullBytes) / 2;
         if (size + cwPtr > MAX_DATA_CODEWORDS) {
             throw new IndexOutOfBoundsException("The text is too big.");
         }
-        length = ptr;
+        int length = ptr;
         ptr = 0;
         while (ptr < length) {
             v = dest[ptr++];
@@ -412,34 +812,51 @@ public class BarcodePDF417 {
                 codewords[cwPtr++] = v * 30 + dest[ptr++];
         }
     }
+    /** Compacts a text segment. The text must have been classified
+     * by <CODE>classifyText()</CODE>.
+     * @param start the start of the segment
+     * @param length the length of the segment
+     */
     protected void textCompaction(int start, int length) {
-        textCompaction(text, start, length);
+        textCompaction(textTypes, start, length);
     }
 
     protected void basicNumberCompaction(int start, int length) {
-        basicNumberCompaction(text, start, length);
+        basicNumberCompaction(text, textOffset + start, length);
     }
 
     private void basicNumberCompaction(byte[] input, int start, int length) {
         int ret = cwPtr;
         int retLast = length / 3;
-        int ni, k;
+        int ni, j, k;
         cwPtr += retLast + 1;
-        for (k = 0; k <= retLast; ++k)
-            codewords[ret + k] = 0;
-        codewords[ret + retLast] = 1;
-        length += start;
-        for (ni = start; ni < length; ++ni) {
-            // multiply by 10
-            for (k = retLast; k >= 0; --k)
-                codewords[ret + k] *= 10;
-            // add the digit
-            codewords[ret + retLast] += input[ni] - '0';
-            // propagate carry
-            for (k = retLast; k > 0; --k) {
-                codewords[ret + k - 1] += codewords[ret + k] / 900;
-                codewords[ret + k] %= 900;
+        // load the leading 1 and the digits in limbs of NUMBER_LIMB_DIGITS,
+        // the most significant limb first
+        long limbs[] = numberLimbs;
+        int nLimbs = length / NUMBER_LIMB_DIGITS + 1;
+        long v = 1;
+        ni = start;
+        for (k = length % NUMBER_LIMB_DIGITS; k > 0; --k)
+            v = v * 10 + (input[ni++] - '0');
+        limbs[0] = v;
+        for (j = 1; j < nLimbs; ++j) {
+            v = 0;
+            for (k = 0; k < NUMBER_LIMB_DIGITS; ++k)
+                v = v * 10 + (input[ni++] - '0');
+            limbs[j] = v;
+        }
+        // divide by 900, the remainders are the codewords from the last
+        int top = 0;
+        for (k = retLast; k >= 0; --k) {
+            long rem = 0;
+            for (j = top; j < nLimbs; ++j) {
+                v = rem * NUMBER_LIMB_BASE + limbs[j];
+                limbs[j] = v / 900;
+                rem = v - limbs[j] * 900;
             }
+            codewords[ret + k] = (int)rem;
+            while (top < nLimbs - 1 && limbs[top] == 0)
+                ++top;
         }
     }
 
@@ -462,212 +879,367 @@ public class BarcodePDF417 {
         }
     
     protected void numberCompaction(int start, int length) {
-        numberCompaction(text, start, length);
+        numberCompaction(text, textOffset + start, length);
     }
 
     protected void byteCompaction6(int start) {
-        int length = 6;
-        int ret = cwPtr;
-        int retLast = 4;
-        int ni, k;
-        cwPtr += retLast + 1;
-        for (k = 0; k <= retLast ; ++k)
-            codewords[ret + k] = 0;
-        length += start;
-        for (ni = start; ni < length; ++ni) {
-            // multiply by 256
-            for (k = retLast; k >= 0; --k)
-                codewords[ret + k] *= 256;
-            // add the digit
-            codewords[ret + retLast] += text[ni] & 0xff;
-            // propagate carry
-            for (k = retLast; k > 0; --k) {
-                codewords[ret + k - 1] += codewords[ret + k] / 900;
-                codewords[ret + k] %= 900;
-            }
-        }
+        cwPtr = byteCompaction6(text, textOffset + start, codewords, cwPtr);
+    }
+
+    /** Packs 6 bytes in 5 base 900 codewords. The 48 bit value is built once
+     * and 2^48 is less than 900^5 so the first codeword is what is left
+     * after the last division.
+     * @param input the bytes
+     * @param start the first byte
+     * @param cw the codewords
+     * @param ptr the position of the first codeword
+     * @return the position after the last codeword
+     */
+    private static int byteCompaction6(byte[] input, int start, int[] cw, int ptr) {
+        long v = ((long)(input[start] & 0xff) << 40)
+            | ((long)(input[start + 1] & 0xff) << 32)
+            | ((long)(input[start + 2] & 0xff) << 24)
+            | ((input[start + 3] & 0xff) << 16)
+            | ((input[start + 4] & 0xff) << 8)
+            | (input[start + 5] & 0xff);
+        long q = v / 900;
+        cw[ptr + 4] = (int)(v - q * 900);
+        v = q / 900;
+        cw[ptr + 3] = (int)(q - v * 900);
+        q = v / 900;
+        cw[ptr + 2] = (int)(v - q * 900);
+        v = q / 900;
+        cw[ptr + 1] = (int)(q - v * 900);
+        cw[ptr] = (int)v;
+        return ptr + 5;
     }
 
     void byteCompaction(int start, int length) {
-        int k, j;
         int size = (length / 6) * 5 + (length % 6);
         if (size + cwPtr > MAX_DATA_CODEWORDS) {
             throw new IndexOutOfBoundsException("The text is too big.");
         }
-        length += start;
-        for (k = start; k < length; k += 6) {
-            size = length - k < 44 ? length - k : 6;
-            if (size < 6) {
-                for (j = 0; j < size; ++j)
-                    codewords[cwPtr++] = text[k + j] & 0xff;
+        byte input[] = text;
+        int cw[] = codewords;
+        int ptr = cwPtr;
+        start += textOffset;
+        int end = start + length;
+        int full = end - length % 6;
+        int k;
+        for (k = start; k < full; k += 6)
+            ptr = byteCompaction6(input, k, cw, ptr);
+        for (; k < end; ++k)
+            cw[ptr++] = input[k] & 0xff;
+        cwPtr = ptr;
+    }
+
+    /** Splits the text from a position in numeric segments of 13 digits
+     * or more and in text and binary segments between them, the first
+     * pass of <CODE>breakString()</CODE>.
+     * @param k the position, 0 or the end of a numeric segment
+     */
+    private void breakDigits(int k) {
+        int lastP = k;
+        while (k < textLength) {
+            int nd = digitRuns[k];
+            if (nd >= 13) {
+                breakTextAndBinary(lastP, k);
+                segmentList.add('N', k, k + nd);
+                k += nd;
+                lastP = k;
             }
             else {
-                byteCompaction6(k);
+                // the byte after the digits is not a digit
+                k += nd + 1;
             }
         }
+        breakTextAndBinary(lastP, textLength);
     }
-
+    
     void breakString() {
-        int textLength = text.length;
-        int lastP = 0;
-        int startN = 0;
-        int nd = 0;
-        char c = 0;
-        int k, j;
-        boolean lastTxt, txt;
-        Segment v;
-        Segment vp;
-        Segment vn;
+        int k;
+        SegmentList list = segmentList;
         
         if ((options & PDF417_FORCE_BINARY) != 0) {
-            segmentList.add('B', 0, textLength);
+            list.add('B', 0, textLength);
             return;
         }
-        for (k = 0; k < textLength; ++k) {
-            c = (char)(text[k] & 0xff);
-            if (c >= '0' && c <= '9') {
-                if (nd == 0)
-                    startN = k;
-                ++nd;
-                continue;
-            }
-            if (nd >= 13) {
-                if (lastP != startN) {
-                    c = (char)(text[lastP] & 0xff);
-                    lastTxt = (c >= ' ' && c < 127) || c == '\r' || c == '\n' || c == '\t';
-                    for (j = lastP; j < startN; ++j) {
-                        c = (char)(text[j] & 0xff);
-                        txt = (c >= ' ' && c < 127) || c == '\r' || c == '\n' || c == '\t';
-                        if (txt != lastTxt) {
-                            segmentList.add(lastTxt ? 'T' : 'B', lastP, j);
-                            lastP = j;
-                            lastTxt = txt;
-                        }
-                    }
-                    segmentList.add(lastTxt ? 'T' : 'B', lastP, startN);
-                }
-                segmentList.add('N', startN, k);
-                lastP = k;
-            }
-            nd = 0;
-        }
-        if (nd < 13)
-            startN = textLength;
-        if (lastP != startN) {
-            c = (char)(text[lastP] & 0xff);
-            lastTxt = (c >= ' ' && c < 127) || c == '\r' || c == '\n' || c == '\t';
-            for (j = lastP; j < startN; ++j) {
-                c = (char)(text[j] & 0xff);
-                txt = (c >= ' ' && c < 127) || c == '\r' || c == '\n' || c == '\t';
-                if (txt != lastTxt) {
-                    segmentList.add(lastTxt ? 'T' : 'B', lastP, j);
-                    lastP = j;
-                    lastTxt = txt;
-                }
-            }
-            segmentList.add(lastTxt ? 'T' : 'B', lastP, startN);
+        if ((options & PDF417_OPTIMAL_SEGMENTATION) != 0) {
+            breakStringOptimal();
+            return;
         }
-        if (nd >= 13)
-            segmentList.add('N', startN, textLength);
+        k = 0;
+        BarcodePDF417Template tp = template;
+        if (tp != null && tp.breakList != null) {
+            // the first pass up to the last numeric segment of the prefix
+            SegmentList p = tp.breakList;
+            for (int j = 0; j < p.size(); ++j)
+                list.add(p.type[j], p.start[j], p.end[j]);
+            k = tp.breakResume;
+        }
+        breakDigits(k);
         //optimize
         //merge short binary
-        for (k = 0; k < segmentList.size(); ++k) {
-            v = segmentList.get(k);
-            vp = segmentList.get(k - 1);
-            vn = segmentList.get(k + 1);
-            if (checkSegmentType(v, 'B') && getSegmentLength(v) == 1) {
-                if (checkSegmentType(vp, 'T') && checkSegmentType(vn, 'T') 
-                    && getSegmentLength(vp) + getSegmentLength(vn) >= 3) {
-                    vp.end = vn.end;
-                    segmentList.remove(k);
-                    segmentList.remove(k);
-                    k = -1;
-                    continue;
-                }
+        //a T B1 T triple can only become mergeable when its last T grows,
+        //so checking the top of the merged list after each step is enough
+        int w = 0;
+        for (k = 0; k < list.size(); ++k) {
+            list.set(w++, list.type[k], list.start[k], list.end[k]);
+            while (w >= 3 && list.type[w - 1] == 'T' && list.type[w - 3] == 'T'
+                && list.type[w - 2] == 'B' && list.end[w - 2] - list.start[w - 2] == 1
+                && (list.end[w - 3] - list.start[w - 3]) + (list.end[w - 1] - list.start[w - 1]) >= 3) {
+                list.end[w - 3] = list.end[w - 1];
+                w -= 2;
             }
         }
+        list.size = w;
         //merge text sections
-        for (k = 0; k < segmentList.size(); ++k) {
-            v = segmentList.get(k);
-            vp = segmentList.get(k - 1);
-            vn = segmentList.get(k + 1);
-            if (checkSegmentType(v, 'T') && getSegmentLength(v) >= 5) {
-                boolean redo = false;
-                if ((checkSegmentType(vp, 'B') && getSegmentLength(vp) == 1) || checkSegmentType(vp, 'T')) {
-                    redo = true;
-                    v.start = vp.start;
-                    segmentList.remove(k - 1);
-                    --k;
-                }
-                if ((checkSegmentType(vn, 'B') && getSegmentLength(vn) == 1) || checkSegmentType(vn, 'T')) {
-                    redo = true;
-                    v.end = vn.end;
-                    segmentList.remove(k + 1);
-                }
-                if (redo) {
-                    k = -1;
-                    continue;
-                }
+        //a run of text and one byte binary sections with a text of 5 or more becomes text
+        w = 0;
+        k = 0;
+        while (k < list.size()) {
+            int j = k;
+            boolean merge = false;
+            while (j < list.size() && (list.type[j] == 'T' || (list.type[j] == 'B' && getSegmentLength(j) == 1))) {
+                if (list.type[j] == 'T' && getSegmentLength(j) >= 5)
+                    merge = true;
+                ++j;
             }
+            w = mergeRun(k, j, w, merge, 'T');
+            k = j == k ? k + 1 : j;
         }
+        list.size = w;
         //merge binary sections
-        for (k = 0; k < segmentList.size(); ++k) {
-            v = segmentList.get(k);
-            vp = segmentList.get(k - 1);
-            vn = segmentList.get(k + 1);
-            if (checkSegmentType(v, 'B')) {
-                boolean redo = false;
-                if ((checkSegmentType(vp, 'T') && getSegmentLength(vp) < 5) || checkSegmentType(vp, 'B')) {
-                    redo = true;
-                    v.start = vp.start;
-                    segmentList.remove(k - 1);
-                    --k;
+        //a run of binary and text sections shorter than 5 with a binary becomes binary
+        w = 0;
+        k = 0;
+        while (k < list.size()) {
+            int j = k;
+            boolean merge = false;
+            while (j < list.size() && (list.type[j] == 'B' || (list.type[j] == 'T' && getSegmentLength(j) < 5))) {
+                if (list.type[j] == 'B')
+                    merge = true;
+                ++j;
+            }
+            w = mergeRun(k, j, w, merge, 'B');
+            k = j == k ? k + 1 : j;
+        }
+        list.size = w;
+        // check if all numbers
+        if (list.size() == 1 && list.type[0] == 'T' && getSegmentLength(0) >= 8) {
+            if (digitRuns[list.start[0]] >= getSegmentLength(0))
+                list.type[0] = 'N';
+        }
+    }
+    
+    /** Splits the text into the segments with the least number of codewords.
+     * The cost of every prefix of the text is computed for each state the
+     * encoder can be in after it: a text sub-mode with an even or odd number
+     * of half codewords, a byte segment holding a given number of bytes
+     * modulo 6 or the end of a numeric segment. The costs are in sixths of
+     * a codeword, which makes the text halves and the grouped bytes exact.
+     * A numeric segment ends at the end of its digit run or up to 44 digits
+     * before it, so the digits left can go to the next segment. Ending it
+     * sooner never saves codewords: 44 more digits take 15 codewords as
+     * numeric and at least 21 in text or bytes.
+     */
+    private void breakStringOptimal() {
+        int size = (textLength + 1) * OPT_STATES;
+        int first = 0;
+        BarcodePDF417Template tp = template;
+        if (tp != null && tp.segCost != null) {
+            // the costs up to the prefix checkpoint only depend on the prefix
+            first = tp.segResume;
+            int rows = (first + 1) * OPT_STATES;
+            prepareOpt(size, rows);
+            System.arraycopy(tp.segCost, 0, optCost, 0, rows);
+            System.arraycopy(tp.segFrom, 0, optFrom, 0, rows);
+        }
+        else {
+            prepareOpt(size, 0);
+            optCost[OPT_TEXT] = 0;
+        }
+        int cost[] = optCost;
+        int types[] = textTypes;
+        for (int k = first; k < textLength; ++k) {
+            int base = k * OPT_STATES;
+            int next = base + OPT_STATES;
+            int v = types[k];
+            int nd = digitRuns[k];
+            int numLeave = Integer.MAX_VALUE;
+            int numFrom = 0;
+            for (int state = 0; state < OPT_STATES; ++state) {
+                int c = cost[base + state];
+                if (c == Integer.MAX_VALUE)
+                    continue;
+                int from = base + state;
+                int mode, odd, leave;
+                if (state < OPT_BYTE) {
+                    mode = state >> 1;
+                    odd = state & 1;
+                    leave = c + odd * 3;
                 }
-                if ((checkSegmentType(vn, 'T') && getSegmentLength(vn) < 5) || checkSegmentType(vn, 'B')) {
-                    redo = true;
-                    v.end = vn.end;
-                    segmentList.remove(k + 1);
+                else {
+                    // latch to text
+                    mode = 0;
+                    odd = 0;
+                    leave = c;
+                    c += 6;
                 }
-                if (redo) {
-                    k = -1;
-                    continue;
+                // text
+                if ((v & ISBYTE) != 0) {
+                    // byte shift, padded to a full codeword, possibly after a latch
+                    for (int t = 0; t < 4; ++t) {
+                        int h = TEXT_LATCH[mode][t];
+                        int p = (odd + h) & 1;
+                        int m = p != 0 && t == 3 ? 0 : t;
+                        relax(next + (m << 1), c + (h + p) * 3 + 12, from);
+                    }
+                }
+                else {
+                    for (int t = 0; t < 4; ++t) {
+                        if ((v & (ALPHA << t)) != 0) {
+                            int h = TEXT_LATCH[mode][t] + 1;
+                            relax(next + (t << 1) + ((odd + h) & 1), c + h * 3, from);
+                        }
+                    }
+                    if (((v & PUNCTUATION) != 0 && mode != 3) || ((v & ALPHA) != 0 && mode == 1))
+                        relax(next + (mode << 1) + odd, c + 6, from);
+                }
+                // byte
+                if (state >= OPT_BYTE && state < OPT_NUMERIC) {
+                    int count = state - OPT_BYTE;
+                    relax(next + OPT_BYTE + (count + 1) % 6, leave + (count == 5 ? 0 : 6), from);
+                }
+                else {
+                    relax(next + OPT_BYTE + 1, leave + 12, from);
+                }
+                if (leave < numLeave) {
+                    numLeave = leave;
+                    numFrom = from;
+                }
+            }
+            // numeric, from the cheapest state to leave
+            if (nd > 0 && numLeave != Integer.MAX_VALUE) {
+                for (int j = Math.max(1, nd - 44); j <= nd; ++j) {
+                    int full = (j / 44) * 15;
+                    int rest = j % 44;
+                    int cw = rest == 0 ? full : full + rest / 3 + 1;
+                    relax((k + j) * OPT_STATES + OPT_NUMERIC, numLeave + 6 + cw * 6, numFrom);
                 }
             }
         }
-        // check if all numbers
-        if (segmentList.size() == 1 && (v = segmentList.get(0)).type == 'T' && getSegmentLength(v) >= 8) {
-            for (k = v.start; k < v.end; ++k) {
-                c = (char)(text[k] & 0xff);
-                if (c < '0' || c > '9')
-                    break;
+        int base = textLength * OPT_STATES;
+        int best = -1;
+        int bestCost = Integer.MAX_VALUE;
+        for (int state = 0; state < OPT_STATES; ++state) {
+            int c = cost[base + state];
+            if (c == Integer.MAX_VALUE)
+                continue;
+            if (state < OPT_BYTE)
+                c += (state & 1) * 3;
+            if (c < bestCost) {
+                bestCost = c;
+                best = base + state;
+            }
+        }
+        // walk back, the segments come out in reverse order
+        SegmentList list = segmentList;
+        int end = textLength;
+        char type = 0;
+        for (int idx = best; idx > 0; idx = optFrom[idx]) {
+            int pos = idx / OPT_STATES;
+            int state = idx - pos * OPT_STATES;
+            char t = state < OPT_BYTE ? 'T' : (state < OPT_NUMERIC ? 'B' : 'N');
+            if (type != 0 && t != type) {
+                list.add(type, pos, end);
+                end = pos;
+            }
+            type = t;
+        }
+        if (type != 0)
+            list.add(type, 0, end);
+        for (int i = 0, j = list.size() - 1; i < j; ++i, --j) {
+            char t = list.type[i];
+            list.type[i] = list.type[j];
+            list.type[j] = t;
+            int n = list.start[i];
+            list.start[i] = list.start[j];
+            list.start[j] = n;
+            n = list.end[i];
+            list.end[i] = list.end[j];
+            list.end[j] = n;
+        }
+    }
+    
+    private void relax(int idx, int c, int from) {
+        if (c < optCost[idx]) {
+            optCost[idx] = c;
+            optFrom[idx] = from;
+        }
+    }
+    
+    /** Moves the segments from <CODE>start</CODE> to <CODE>end</CODE> down to
+     * <CODE>w</CODE>, merging them into a single segment if requested. If the
+     * range is empty the segment at <CODE>start</CODE> is moved unchanged.
+     * @param start the first segment of the range
+     * @param end the end of the range
+     * @param w the position to move to
+     * @param merge <CODE>true</CODE> to merge the range
+     * @param type the type of the merged segment
+     * @return the position after the moved segments
+     */
+    private int mergeRun(int start, int end, int w, boolean merge, char type) {
+        SegmentList list = segmentList;
+        if (start == end)
+            end = start + 1;
+        else if (merge) {
+            list.set(w++, type, list.start[start], list.end[end - 1]);
+            return w;
+        }
+        for (int k = start; k < end; ++k)
+            list.set(w++, list.type[k], list.start[k], list.end[k]);
+        return w;
+    }
+    
+    /** Adds the text and binary segments between <CODE>start</CODE>
+     * and <CODE>end</CODE>.
+     * @param start the start of the range
+     * @param end the end of the range
+     */
+    private void breakTextAndBinary(int start, int end) {
+        if (start == end)
+            return;
+        int types[] = textTypes;
+        boolean lastTxt = (types[start] & ISBYTE) == 0;
+        for (int j = start; j < end; ++j) {
+            boolean txt = (types[j] & ISBYTE) == 0;
+            if (txt != lastTxt) {
+                segmentList.add(lastTxt ? 'T' : 'B', start, j);
+                start = j;
+                lastTxt = txt;
             }
-            if (k == v.end)
-                v.type = 'N';
         }
+        segmentList.add(lastTxt ? 'T' : 'B', start, end);
     }
 
     protected void assemble() {
         int k;
-        if (segmentList.size() == 0)
-            return;
         cwPtr = 1;
         for (k = 0; k < segmentList.size(); ++k) {
-            Segment v = segmentList.get(k);
-            switch (v.type) {
+            switch (segmentList.type[k]) {
             case 'T':
                 if (k != 0)
                     codewords[cwPtr++] = TEXT_MODE;
-                textCompaction(v.start, getSegmentLength(v));
                 break;
             case 'N':
                 codewords[cwPtr++] = NUMERIC_MODE;
-                numberCompaction(v.start, getSegmentLength(v));
                 break;
             case 'B':
-                codewords[cwPtr++] = (getSegmentLength(v) % 6) != 0 ? BYTE_MODE : BYTE_MODE_6;
-                byteCompaction(v.start, getSegmentLength(v));
+                codewords[cwPtr++] = (getSegmentLength(k) % 6) != 0 ? BYTE_MODE : BYTE_MODE_6;
                 break;
             }
+            compactSegment(k);
         }
 
         if ((options & PDF417_USE_MACRO) != 0) {
@@ -676,6 +1248,117 @@ public class BarcodePDF417 {
 
     }
     
+    /** Saves in the template the compaction state of the text, its prefix,
+     * that doesn't depend on the bytes that follow it: the classification,
+     * the first pass of the greedy segmentation up to the last numeric
+     * segment, the costs of the optimal segmentation before the trailing
+     * digits and the state of the compaction of the last text segment. It
+     * must be called after <CODE>segmentText()</CODE>.
+     * @param t the template
+     */
+    void saveCheckpoints(BarcodePDF417Template t) {
+        int prefixLength = textLength;
+        if ((options & PDF417_FORCE_BINARY) != 0 || prefixLength == 0)
+            return;
+        t.prefixTypes = new int[prefixLength];
+        t.prefixRuns = new int[prefixLength];
+        System.arraycopy(textTypes, 0, t.prefixTypes, 0, prefixLength);
+        System.arraycopy(digitRuns, 0, t.prefixRuns, 0, prefixLength);
+        if ((options & PDF417_OPTIMAL_SEGMENTATION) == 0) {
+            SegmentList list = segmentList;
+            segmentList = new SegmentList();
+            breakDigits(0);
+            // a numeric segment followed by a byte of the prefix is complete
+            int n = segmentList.size();
+            while (n > 0 && (segmentList.type[n - 1] != 'N' || segmentList.end[n - 1] == prefixLength))
+                --n;
+            if (n > 0) {
+                segmentList.size = n;
+                t.breakList = segmentList;
+                t.breakResume = segmentList.end[n - 1];
+            }
+            segmentList = list;
+        }
+        else {
+            // a numeric segment starting in the trailing digits may grow
+            int resume = prefixLength;
+            while (resume > 0 && digitRuns[resume - 1] > 0)
+                --resume;
+            int rows = (resume + 1) * OPT_STATES;
+            t.segResume = resume;
+            t.segCost = new int[rows];
+            t.segFrom = new int[rows];
+            System.arraycopy(optCost, 0, t.segCost, 0, rows);
+            System.arraycopy(optFrom, 0, t.segFrom, 0, rows);
+        }
+        int last = segmentList.size() - 1;
+        if (segmentList.type[last] != 'T')
+            return;
+        int start = segmentList.start[last];
+        if (textBuffer == null)
+            textBuffer = new int[ABSOLUTE_MAX_TEXT_SIZE * 2];
+        if ((options & (PDF417_OPTIMAL_TEXT | PDF417_OPTIMAL_SEGMENTATION)) != 0) {
+            int rows = (prefixLength - start + 1) * 8;
+            prepareOpt(rows, 0);
+            optCost[0] = 0;
+            textDp(textTypes, start, 0, prefixLength - start);
+            t.textStart = start;
+            t.textResume = prefixLength;
+            t.textCost = new int[rows];
+            t.textFrom = new int[rows];
+            System.arraycopy(optCost, 0, t.textCost, 0, rows);
+            System.arraycopy(optFrom, 0, t.textFrom, 0, rows);
+        }
+        else if (prefixLength - 2 > start) {
+            // the greedy choice looks two characters ahead
+            textMode = ALPHA;
+            textPtr = 0;
+            textFullBytes = 0;
+            greedyText(textTypes, start, prefixLength - 2, prefixLength);
+            t.textStart = start;
+            t.textResume = prefixLength - 2;
+            t.textMode = textMode;
+            t.textPtr = textPtr;
+            t.textFullBytes = textFullBytes;
+            t.textDest = new int[textPtr];
+            System.arraycopy(textBuffer, 0, t.textDest, 0, textPtr);
+        }
+    }
+    
+    /** Compacts a segment without its mode latch. The codewords of a segment
+     * of the prefix of <CODE>template</CODE> are copied from it.
+     * @param k the segment
+     */
+    void compactSegment(int k) {
+        int start = segmentList.start[k];
+        int length = getSegmentLength(k);
+        char type = segmentList.type[k];
+        if (template != null) {
+            int idx = template.find(type, start, start + length);
+            if (idx >= 0) {
+                int off = template.offsets[idx];
+                int size = template.offsets[idx + 1] - off;
+                if (size + cwPtr > MAX_DATA_CODEWORDS) {
+                    throw new IndexOutOfBoundsException("The text is too big.");
+                }
+                System.arraycopy(template.pool, off, codewords, cwPtr, size);
+                cwPtr += size;
+                return;
+            }
+        }
+        switch (type) {
+        case 'T':
+            textCompaction(start, length);
+            break;
+        case 'N':
+            numberCompaction(start, length);
+            break;
+        case 'B':
+            byteCompaction(start, length);
+            break;
+        }
+    }
+    
     private void macroCodes() {
         if (macroSegmentId < 0) {
             throw new IllegalStateException("macroSegmentId must be >=0");
@@ -691,8 +1374,8 @@ public class BarcodePDF417 {
         codewords[cwPtr++] = MACRO_SEGMENT_ID;
         append(macroSegmentId, 5);
             
-        if (macroFileId != null) {
-            append(macroFileId);
+        if (macroFileIdTypes != null) {
+            textCompaction(macroFileIdTypes, 0, macroFileIdTypes.length);
         }
                 
         if (macroSegmentId >= macroSegmentCount-1) {
@@ -702,19 +1385,15 @@ public class BarcodePDF417 {
     }
     
     private void append(int in, int len) {
-        StringBuffer sb = new StringBuffer(len+1);
-        sb.append(Integer.toString(in));
-        for(int i = sb.length(); i < len; i++) {
-            sb.insert(0, "0");
-        }
-    
-        byte[] bytes = PdfEncodings.convertToBytes(sb.toString(), "cp437");
-        numberCompaction(bytes, 0, bytes.length);
-    }    
-    
-    private void append(String s) {
-        byte[] bytes = PdfEncodings.convertToBytes(s, "cp437");
-        textCompaction(bytes, 0, bytes.length);
+        byte digits[] = macroDigits;
+        int ptr = digits.length;
+        do {
+            digits[--ptr] = (byte)('0' + in % 10);
+            in /= 10;
+        } while (in > 0);
+        while (ptr > digits.length - len)
+            digits[--ptr] = '0';
+        numberCompaction(digits, ptr, digits.length - ptr);
     }    
     
     
@@ -734,16 +1413,15 @@ public class BarcodePDF417 {
         if (segmentList.size() == 0)
             return;
         for (int k = 0; k < segmentList.size(); ++k) {
-            Segment v = segmentList.get(k);
-            int len = getSegmentLength(v);
+            int len = getSegmentLength(k);
             char c[] = new char[len];
             for (int j = 0; j < len; ++j) {
-                c[j] = (char)(text[v.start + j] & 0xff);
+                c[j] = (char)(text[textOffset + segmentList.start[k] + j] & 0xff);
                 if (c[j] == '\r')
                     c[j] = '\n';
             }
             StringBuffer sb = new StringBuffer();
-            sb.append(v.type);
+            sb.append(segmentList.type[k]);
             sb.append(c);
             System.out.println(sb.toString());
         }
@@ -761,38 +1439,292 @@ public class BarcodePDF417 {
         return MAX_DATA_CODEWORDS + 2;
     }
 
+    /** Segments and compacts the text into the data codewords. */
+    private void compactText() {
+        segmentText();
+        assemble();
+        codewords[0] = lenCodewords = cwPtr;
+    }
+    
+    /** Compacts the text with segments chosen by the caller instead of
+     * splitting it with <CODE>segmentText()</CODE>. Only the bytes of the
+     * text segments are classified.
+     * @param segments the segments, covering the text in order
+     * @return the data codewords
+     */
+    BarcodePDF417Codewords compileSegments(SegmentList segments) {
+        if (textLength > ABSOLUTE_MAX_TEXT_SIZE) {
+            throw new IndexOutOfBoundsException("The text is too big.");
+        }
+        if (segmentList == null)
+            segmentList = new SegmentList();
+        else
+            segmentList.clear();
+        if (textTypes == null || textTypes.length < textLength + 1) {
+            int size = Math.max(textLength, ABSOLUTE_MAX_TEXT_SIZE) + 1;
+            textTypes = new int[size];
+            digitRuns = new int[size];
+        }
+        for (int k = 0; k < segments.size(); ++k) {
+            int start = segments.start[k];
+            int end = segments.end[k];
+            segmentList.add(segments.type[k], start, end);
+            if (segments.type[k] == 'T')
+                classify(text, textOffset + start, end - start, textTypes, start);
+        }
+        assemble();
+        codewords[0] = lenCodewords = cwPtr;
+        return new BarcodePDF417Codewords(codewords, lenCodewords, (options & PDF417_USE_MACRO) != 0 ? macroIndex : -1);
+    }
+    
+    /** Classifies the text and splits it into segments. */
+    void segmentText() {
+        if (text == null)
+            throw new NullPointerException("Text cannot be null.");
+        if (textLength > ABSOLUTE_MAX_TEXT_SIZE) {
+            throw new IndexOutOfBoundsException("The text is too big.");
+        }
+        if (segmentList == null)
+            segmentList = new SegmentList();
+        else
+            segmentList.clear();
+        if ((options & PDF417_FORCE_BINARY) == 0)
+            classifyText();
+        breakString();
+        //dumpList();
+    }
+    
+    private static int autoErrorLevel(int lenCodewords) {
+        if (lenCodewords < 41)
+            return 2;
+        else if (lenCodewords < 161)
+            return 3;
+        else if (lenCodewords < 321)
+            return 4;
+        else
+            return 5;
+    }
+    
+    /** Checks if the text fits in a single barcode with the current options
+     * without lowering the error level and, with <CODE>PDF417_FIXED_RECTANGLE</CODE>,
+     * <CODE>PDF417_FIXED_COLUMNS</CODE> or <CODE>PDF417_FIXED_ROWS</CODE>,
+     * without changing the fixed dimensions. Only the codewords are computed.
+     * @return <CODE>true</CODE> if the text fits
+     */
+    boolean fitsLayout() {
+        try {
+            compactText();
+        }
+        catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+        return lenCodewords <= layoutCodewords();
+    }
+    
+    /** Gets the largest number of codewords, the length descriptor included,
+     * that fits the layout with the current options. The automatic error level
+     * grows with the number of codewords, so every smaller number also fits.
+     * @return the largest number of codewords, negative if none fits
+     */
+    private int layoutCodewords() {
+        int rows = Math.min(Math.max(codeRows, 3), 90);
+        int cols = Math.min(Math.max(codeColumns, 1), 30);
+        int capacity;
+        if ((options & PDF417_FIXED_RECTANGLE) != 0)
+            capacity = rows * cols;
+        else if ((options & PDF417_FIXED_ROWS) != 0)
+            capacity = rows * 30;
+        else if ((options & PDF417_FIXED_COLUMNS) != 0)
+            capacity = cols * 90;
+        else
+            capacity = MAX_DATA_CODEWORDS + 2;
+        capacity = Math.min(capacity, MAX_DATA_CODEWORDS + 2);
+        if ((options & PDF417_USE_ERROR_LEVEL) != 0) {
+            int level = Math.min(Math.max(errorLevel, 0), 8);
+            return capacity - (2 << level);
+        }
+        // the last number of each automatic error level
+        int max = capacity - (2 << autoErrorLevel(0));
+        if (max >= 41)
+            max = Math.max(Math.min(40, max), capacity - (2 << autoErrorLevel(41)));
+        if (max >= 161)
+            max = Math.max(Math.min(160, max), capacity - (2 << autoErrorLevel(161)));
+        if (max >= 321)
+            max = Math.max(Math.min(320, max), capacity - (2 << autoErrorLevel(321)));
+        return max;
+    }
+    
+    /** Gets a length that no prefix of the text longer than it can exceed
+     * and still fit the layout with the current options. It runs the states
+     * of the optimal segmentation over the text once, with a numeric segment
+     * that can end at any digit and costs 15/44 of a codeword per digit,
+     * which is never more than the real cost. So the cost at each length is
+     * not more than the codewords of any segmentation of that prefix and it
+     * never decreases, even when the real number of codewords does. With
+     * <CODE>PDF417_FORCE_BINARY</CODE> the bound is exact. The text is set to
+     * an empty slice of <CODE>input</CODE>.
+     * @param input the bytes
+     * @param start the first byte of the text
+     * @param length the number of bytes
+     * @return the bound, between 0 and <CODE>length</CODE>
+     */
+    int fitLengthBound(byte[] input, int start, int length) {
+        setText(input, start, 0);
+        compactText();
+        if (lenCodewords > layoutCodewords())
+            return 0;
+        if ((options & PDF417_FORCE_BINARY) != 0) {
+            // the empty text already has the latch, 5 codewords for each 6 bytes and one for each byte left
+            int groups = layoutCodewords() - lenCodewords;
+            long max = (long)groups / 5 * 6 + groups % 5;
+            return (int)Math.min(length, max);
+        }
+        // in 1/132 of a codeword
+        int free = (layoutCodewords() - lenCodewords) * 132;
+        int cost[] = new int[OPT_STATES];
+        int next[] = new int[OPT_STATES];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        cost[OPT_TEXT] = 0;
+        int k;
+        for (k = 0; k < length; ++k) {
+            int ch = input[start + k] & 0xff;
+            int v = TEXT_TYPE_AND_VALUE[ch];
+            boolean digit = ch >= '0' && ch <= '9';
+            Arrays.fill(next, Integer.MAX_VALUE);
+            for (int state = 0; state < OPT_STATES; ++state) {
+                int c = cost[state];
+                if (c == Integer.MAX_VALUE)
+                    continue;
+                int mode, odd, leave;
+                if (state < OPT_BYTE) {
+                    mode = state >> 1;
+                    odd = state & 1;
+                    leave = c + odd * 66;
+                }
+                else {
+                    mode = 0;
+                    odd = 0;
+                    leave = c;
+                    c += 132;
+                }
+                if ((v & ISBYTE) != 0) {
+                    for (int t = 0; t < 4; ++t) {
+                        int h = TEXT_LATCH[mode][t];
+                        int p = (odd + h) & 1;
+                        int m = p != 0 && t == 3 ? 0 : t;
+                        next[m << 1] = Math.min(next[m << 1], c + (h + p) * 66 + 264);
+                    }
+                }
+                else {
+                    for (int t = 0; t < 4; ++t) {
+                        if ((v & (ALPHA << t)) != 0) {
+                            int h = TEXT_LATCH[mode][t] + 1;
+                            int n = (t << 1) + ((odd + h) & 1);
+                            next[n] = Math.min(next[n], c + h * 66);
+                        }
+                    }
+                    if (((v & PUNCTUATION) != 0 && mode != 3) || ((v & ALPHA) != 0 && mode == 1))
+                        next[(mode << 1) + odd] = Math.min(next[(mode << 1) + odd], c + 132);
+                }
+                if (state >= OPT_BYTE && state < OPT_NUMERIC) {
+                    int count = state - OPT_BYTE;
+                    int n = OPT_BYTE + (count + 1) % 6;
+                    next[n] = Math.min(next[n], leave + (count == 5 ? 0 : 132));
+                }
+                else {
+                    next[OPT_BYTE + 1] = Math.min(next[OPT_BYTE + 1], leave + 264);
+                }
+                if (digit)
+                    next[OPT_NUMERIC] = Math.min(next[OPT_NUMERIC], leave + (state == OPT_NUMERIC ? 45 : 177));
+            }
+            int least = Integer.MAX_VALUE;
+            for (int state = 0; state < OPT_STATES; ++state) {
+                int c = next[state];
+                if (c != Integer.MAX_VALUE && state < OPT_BYTE)
+                    c += (state & 1) * 66;
+                least = Math.min(least, c);
+            }
+            if (least > free)
+                break;
+            int t[] = cost;
+            cost = next;
+            next = t;
+        }
+        return k;
+    }
+
     /** Paints the barcode. If no exception was thrown a valid barcode is available. */    
     public void paintCode() {
-        int maxErr, lenErr, tot, pad;
+        paintCode(null);
+    }
+
+    /** Paints the barcode into a bitmap supplied by the caller. If no exception
+     * was thrown a valid barcode is available. The bitmap is used if it is large
+     * enough, otherwise a new one is allocated; in both cases it is returned by
+     * <CODE>getOutBits()</CODE>. An array of 6570 bytes is large enough for any barcode.
+     * <p>
+     * The work areas are kept between calls, so repeated calls on the same
+     * instance with the same bitmap and a <CODE>byte</CODE> text don't allocate memory.
+     * @param outBits the bitmap to paint into or <CODE>null</CODE>
+     */    
+    public void paintCode(byte[] outBits) {
+        compileCodewords();
+        layoutAndPaint(outBits, (options & PDF417_USE_MACRO) != 0 ? macroIndex : -1);
+    }
+    
+    /** Segments and compacts the text into data codewords that can be
+     * painted any number of times with <CODE>paintCodewords(BarcodePDF417Codewords)</CODE>.
+     * With <CODE>PDF417_USE_RAW_CODEWORDS</CODE> the data codewords are
+     * taken from <CODE>getCodewords()</CODE>. Only the options, text and macro
+     * fields are used, the layout and the error level are chosen when painting.
+     * @return the data codewords
+     */
+    public BarcodePDF417Codewords compile() {
+        compileCodewords();
+        return new BarcodePDF417Codewords(codewords, lenCodewords, (options & PDF417_USE_MACRO) != 0 ? macroIndex : -1);
+    }
+    
+    /** Paints data codewords made by <CODE>compile()</CODE>, possibly by another
+     * instance, with the layout and the error level of this instance. The text
+     * and its options are not used.
+     * @param data the data codewords
+     */
+    public void paintCodewords(BarcodePDF417Codewords data) {
+        paintCodewords(data, null);
+    }
+    
+    /** Paints data codewords made by <CODE>compile()</CODE> into a bitmap
+     * supplied by the caller.
+     * @param data the data codewords
+     * @param outBits the bitmap to paint into or <CODE>null</CODE>
+     * @see #paintCode(byte[])
+     */
+    public void paintCodewords(BarcodePDF417Codewords data, byte[] outBits) {
+        lenCodewords = data.copyTo(codewords);
+        layoutAndPaint(outBits, data.getMacroIndex());
+    }
+    
+    private void compileCodewords() {
         if ((options & PDF417_USE_RAW_CODEWORDS) != 0) {
             if (lenCodewords > MAX_DATA_CODEWORDS || lenCodewords < 1 || lenCodewords != codewords[0]) {
                 throw new IllegalArgumentException("Invalid codeword size.");
             }
         }
-        else {
-            if (text == null)
-                throw new NullPointerException("Text cannot be null.");
-            if (text.length > ABSOLUTE_MAX_TEXT_SIZE) {
-                throw new IndexOutOfBoundsException("The text is too big.");
-            }
-            segmentList = new SegmentList();
-            breakString();
-            //dumpList();
-            assemble();
-            segmentList = null;
-            codewords[0] = lenCodewords = cwPtr;
-        }
+        else
+            compactText();
+    }
+    
+    /** Lays out the data codewords, adds the padding and the error correction
+     * and paints the barcode.
+     * @param outBits the bitmap to paint into or <CODE>null</CODE>
+     * @param macro the position of the macro control block or -1 if there is none
+     */
+    private void layoutAndPaint(byte[] outBits, int macro) {
+        int maxErr, lenErr, tot, pad;
+        this.outBits = outBits;
         maxErr = maxPossibleErrorLevel(MAX_DATA_CODEWORDS + 2 - lenCodewords);
-        if ((options & PDF417_USE_ERROR_LEVEL) == 0) {
-            if (lenCodewords < 41)
-                errorLevel = 2;
-            else if (lenCodewords < 161)
-                errorLevel = 3;
-            else if (lenCodewords < 321)
-                errorLevel = 4;
-            else
-                errorLevel = 5;
-        }
+        if ((options & PDF417_USE_ERROR_LEVEL) == 0)
+            errorLevel = autoErrorLevel(lenCodewords);
         if (errorLevel < 0)
             errorLevel = 0;
         else if (errorLevel > maxErr)
@@ -859,12 +1791,12 @@ public class BarcodePDF417 {
         errorLevel = maxPossibleErrorLevel(tot - lenCodewords);
         lenErr = 2 << errorLevel;
         pad = tot - lenErr - lenCodewords;
-        if ((options & PDF417_USE_MACRO) != 0) {
+        if (macro >= 0) {
             // the padding comes before the control block
-            System.arraycopy(codewords, macroIndex, codewords, macroIndex + pad, pad);
+            System.arraycopy(codewords, macro, codewords, macro + pad, lenCodewords - macro);
             cwPtr = lenCodewords + pad;
             while (pad-- != 0)
-                codewords[macroIndex++] = TEXT_MODE;
+                codewords[macro++] = TEXT_MODE;
         }
         else {
             cwPtr = lenCodewords;
@@ -883,26 +1815,52 @@ public class BarcodePDF417 {
      * @return the image
      */    
     public java.awt.Image createAwtImage(Color foreground, Color background) {
+        paintCode();
+        return createAwtImage(outBits, bitColumns, codeRows, (int)yHeight, foreground, background);
+    }
+    
+    /** Creates a <CODE>java.awt.Image</CODE> from a raw bitmap.
+     * @param outBits the raw bitmap with one bit per module and each row starting at a byte boundary
+     * @param bitColumns the number of X pixels of <CODE>outBits</CODE>
+     * @param codeRows the number of rows of <CODE>outBits</CODE>
+     * @param h the number of pixels each row is repeated in the Y direction
+     * @param foreground the color of the bars
+     * @param background the color of the background
+     * @return the image
+     */    
+    static java.awt.Image createAwtImage(byte[] outBits, int bitColumns, int codeRows, int h, Color foreground, Color background) {
+        return createAwtImage(BarcodePDF417BitMatrix.fromBytes(outBits, bitColumns, codeRows), h, foreground, background);
+    }
+    
+    /** Creates a <CODE>java.awt.Image</CODE> from a bit matrix. The rows are
+     * painted a dark run at a time.
+     * @param matrix the modules
+     * @param h the number of pixels each row is repeated in the Y direction
+     * @param foreground the color of the bars
+     * @param background the color of the background
+     * @return the image
+     */
+    static java.awt.Image createAwtImage(BarcodePDF417BitMatrix matrix, int h, Color foreground, Color background) {
         int f = foreground.getRGB();
         int g = background.getRGB();
         Canvas canvas = new Canvas();
+        int bitColumns = matrix.getWidth();
+        int codeRows = matrix.getHeight();
 
-        paintCode();
-        int h = (int)yHeight;
         int pix[] = new int[bitColumns * codeRows * h];
-        int stride = (bitColumns + 7) / 8;
+        int runs[] = new int[bitColumns + 1];
+        Arrays.fill(pix, g);
         int ptr = 0;
         for (int k = 0; k < codeRows; ++k) {
-            int p = k * stride;
-            for (int j = 0; j < bitColumns; ++j) {
-                int b = outBits[p + (j / 8)] & 0xff;
-                b <<= j % 8;
-                pix[ptr++] = (b & 0x80) == 0 ? g : f;
+            int n = matrix.getRuns(k, runs);
+            for (int j = 0; j < n; ++j) {
+                int start = ptr + runs[2 * j];
+                Arrays.fill(pix, start, start + runs[2 * j + 1], f);
             }
             for (int j = 1; j < h; ++j) {
-                System.arraycopy(pix, ptr - bitColumns, pix, ptr + bitColumns * (j - 1), bitColumns);
+                System.arraycopy(pix, ptr, pix, ptr + bitColumns * j, bitColumns);
             }
-            ptr += bitColumns * (h - 1);
+            ptr += bitColumns * h;
         }
         
         java.awt.Image img = canvas.createImage(new MemoryImageSource(bitColumns, codeRows * h, pix, 0, bitColumns));
@@ -917,6 +1875,14 @@ public class BarcodePDF417 {
         return this.outBits;
     }
     
+    /** Gets the barcode as a bit matrix. It is a copy of <CODE>getOutBits()</CODE>
+     * made after <CODE>paintCode()</CODE>.
+     * @return the bit matrix
+     */
+    public BarcodePDF417BitMatrix getBitMatrix() {
+        return BarcodePDF417BitMatrix.fromBytes(outBits, bitColumns, codeRows);
+    }
+    
     /** Gets the number of X pixels of <CODE>outBits</CODE>.
      * @return the number of X pixels of <CODE>outBits</CODE>
      */
@@ -994,11 +1960,16 @@ public class BarcodePDF417 {
     }
     
     /** Gets the bytes that form the barcode. This bytes should
-     * be interpreted in the codepage Cp437.
+     * be interpreted in the codepage Cp437. If the text was set as an
+     * array it is returned, otherwise a copy of the bytes is returned.
      * @return the bytes that form the barcode
      */
     public byte[] getText() {
-        return this.text;
+        if (text == null || (textOffset == 0 && textLength == text.length))
+            return this.text;
+        byte b[] = new byte[textLength];
+        System.arraycopy(text, textOffset, b, 0, textLength);
+        return b;
     }
     
     /** Sets the bytes that form the barcode. This bytes should
@@ -1007,6 +1978,43 @@ public class BarcodePDF417 {
      */
     public void setText(byte[] text) {
         this.text = text;
+        textOffset = 0;
+        textLength = text == null ? 0 : text.length;
+    }
+    
+    /** Sets a part of an array as the bytes that form the barcode. This
+     * bytes should be interpreted in the codepage Cp437. The array is
+     * not copied and must not change until the barcode is painted.
+     * @param text the array holding the bytes that form the barcode
+     * @param offset the position of the first byte
+     * @param length the number of bytes
+     */
+    public void setText(byte[] text, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > text.length - length)
+            throw new IndexOutOfBoundsException("Invalid text range.");
+        this.text = text;
+        textOffset = offset;
+        textLength = length;
+    }
+    
+    /** Sets the remaining bytes of a buffer as the bytes that form the barcode.
+     * This bytes should be interpreted in the codepage Cp437. The position
+     * of the buffer is not changed. If the buffer is backed by an accessible
+     * array the bytes are used in place and must not change until the barcode is
+     * painted, otherwise they are copied to a work area that is kept between calls.
+     * @param text the buffer holding the bytes that form the barcode
+     */
+    public void setText(ByteBuffer text) {
+        int length = text.remaining();
+        if (text.hasArray()) {
+            setText(text.array(), text.arrayOffset() + text.position(), length);
+            return;
+        }
+        byte b[] = getTextWorkspace(length);
+        int position = text.position();
+        for (int k = 0; k < length; ++k)
+            b[k] = text.get(position + k);
+        setText(b, 0, length);
     }
     
     /** Sets the text that will form the barcode. This text is converted
@@ -1014,7 +2022,45 @@ public class BarcodePDF417 {
      * @param s the text that will form the barcode
      */    
     public void setText(String s) {
-        this.text = PdfEncodings.convertToBytes(s, "cp437");
+        setText((CharSequence)s);
+    }
+    
+    /** Sets the text that will form the barcode. This text is converted
+     * to bytes using the encoding Cp437 directly into a work area that is
+     * kept between calls. The characters that can't be converted are skipped.
+     * @param s the text that will form the barcode
+     */    
+    public void setText(CharSequence s) {
+        if (s == null) {
+            setText(new byte[0]);
+            return;
+        }
+        byte b[] = getTextWorkspace(s.length());
+        setText(b, 0, PdfEncodings.convertToCp437(s, b, 0));
+    }
+    
+    private byte[] getTextWorkspace(int length) {
+        textWorkspacePrefix = null;
+        if (textWorkspace == null || textWorkspace.length < length)
+            textWorkspace = new byte[Math.max(length, ABSOLUTE_MAX_TEXT_SIZE + 1)];
+        return textWorkspace;
+    }
+    
+    /** Sets the prefix of a template followed by a suffix as the bytes that
+     * form the barcode. They are copied to the work area, the prefix only if
+     * it's not there from the last call.
+     * @param prefix the prefix
+     * @param suffix the bytes after the prefix
+     */
+    void setTemplateText(byte[] prefix, byte[] suffix) {
+        int length = prefix.length + suffix.length;
+        boolean held = textWorkspacePrefix == prefix && textWorkspace.length >= length;
+        byte b[] = getTextWorkspace(length);
+        if (!held)
+            System.arraycopy(prefix, 0, b, 0, prefix.length);
+        System.arraycopy(suffix, 0, b, prefix.length, suffix.length);
+        textWorkspacePrefix = prefix;
+        setText(b, 0, length);
     }
     
     /** Gets the options to generate the barcode.
@@ -1061,6 +2107,27 @@ public class BarcodePDF417 {
         this.yHeight = yHeight;
     }
     
+    /** Gets the executor that paints the rows of large barcodes.
+     * @return the executor or <CODE>null</CODE>
+     */
+    public ExecutorService getPaintExecutor() {
+        return paintExecutor;
+    }
+    
+    /** Sets the executor that paints the rows of large barcodes. Barcodes with
+     * at least <CODE>PARALLEL_PAINT_CODEWORDS</CODE> codewords are painted in bands of rows
+     * concurrently, the smaller ones are always painted in the calling thread.
+     * The calling thread paints bands too and never waits for a band that is
+     * still queued, so the executor may be shared with other work, including
+     * <CODE>BarcodePDF417Encoder.encodeMacro</CODE>, and paints may run in its
+     * own threads. When all its threads are busy the calling thread paints
+     * the whole barcode.
+     * @param paintExecutor the executor or <CODE>null</CODE> to paint in the calling thread
+     */
+    public void setPaintExecutor(ExecutorService paintExecutor) {
+        this.paintExecutor = paintExecutor;
+    }
+    
     protected static final int START_PATTERN = 0x1fea8;
     protected static final int STOP_PATTERN = 0x3fa29;
     protected static final int START_CODE_SIZE = 17;
@@ -1088,10 +2155,57 @@ public class BarcodePDF417 {
     protected static final int MAX_DATA_CODEWORDS = 926;
     protected static final int MACRO_SEGMENT_ID=928;
     protected static final int MACRO_LAST_SEGMENT=922;
+    /** The least number of codewords of a barcode painted by the paint executor. */
+    public static final int PARALLEL_PAINT_CODEWORDS = 512;
+    /** The rows painted by a single task of the paint executor. */
+    private static final int PAINT_BAND_ROWS = 8;
+    /** The decimal digits of a numeric compaction limb. 900 times the limb base
+     * must still fit in a <CODE>long</CODE>.
+     */
+    private static final int NUMBER_LIMB_DIGITS = 15;
+    private static final long NUMBER_LIMB_BASE = 1000000000000000L;
 
     private static final String MIXED_SET = "0123456789&\r\t,:#-.$/+%*=^";
     private static final String PUNCTUATION_SET = ";<>@[\\]_`~!\r\t,:\n-.$/\"|*()?{}'";
 
+    /** The text compaction type and value of each byte. The type bits are
+     * <CODE>ALPHA</CODE>, <CODE>LOWER</CODE>, <CODE>MIXED</CODE>,
+     * <CODE>PUNCTUATION</CODE> and <CODE>ISBYTE</CODE> and the low byte is
+     * the value in the sub-mode or the byte itself.
+     */
+    private static final int TEXT_TYPE_AND_VALUE[] = new int[256];
+    
+    static {
+        for (int k = 0; k < 256; ++k)
+            TEXT_TYPE_AND_VALUE[k] = getTextTypeAndValue((char)k);
+    }
+
+    /** The number of half codewords to latch between the text sub-modes
+     * alpha, lower, mixed and punctuation.
+     */
+    private static final int TEXT_LATCH[][] = {
+        {0, 1, 1, 2},
+        {2, 0, 1, 2},
+        {1, 1, 0, 1},
+        {1, 2, 2, 0}
+    };
+    
+    /** The half codewords of the latches in <CODE>TEXT_LATCH</CODE>. */
+    private static final int TEXT_LATCH_CODES[][][] = {
+        {{}, {LL}, {ML}, {ML, PL}},
+        {{ML, AL}, {}, {ML}, {ML, PL}},
+        {{AL}, {LL}, {}, {PL}},
+        {{PAL}, {PAL, LL}, {PAL, ML}, {}}
+    };
+    
+    /** The states of the optimal segmentation: text sub-mode and parity first,
+     * then the byte count modulo 6 and the end of a numeric segment.
+     */
+    private static final int OPT_TEXT = 0;
+    private static final int OPT_BYTE = 8;
+    private static final int OPT_NUMERIC = 14;
+    private static final int OPT_STATES = 15;
+
     private static final int CLUSTERS[][] =
     {{
          0x1d5c0, 0x1eaf0, 0x1f57c, 0x1d4e0, 0x1ea78, 0x1f53e, 0x1a8c0, 0x1d470,
@@ -1527,6 +2641,36 @@ public class BarcodePDF417 {
         63, 310, 863, 251, 366, 304, 282, 738, 675, 410, 389, 244, 31, 121, 303, 263
     }};
     
+    /** The antilog table of GF(929) with the generator 3. It is twice
+     * the group order long so that the sum of two logs needs no reduction.
+     */
+    private static final int GF_EXP[] = new int[2 * (MOD - 1)];
+    
+    /** The log table of GF(929). The entry for 0 is not used. */
+    private static final int GF_LOG[] = new int[MOD];
+    
+    /** The logs of the <CODE>ERROR_LEVEL</CODE> coefficients in the order
+     * they are used by <CODE>calculateErrorCorrection</CODE>.
+     */
+    private static final int ERROR_LEVEL_LOG[][] = new int[ERROR_LEVEL.length][];
+    
+    static {
+        int x = 1;
+        for (int k = 0; k < MOD - 1; ++k) {
+            GF_EXP[k] = GF_EXP[k + MOD - 1] = x;
+            GF_LOG[x] = k;
+            x = (x * 3) % MOD;
+        }
+        for (int level = 0; level < ERROR_LEVEL.length; ++level) {
+            int A[] = ERROR_LEVEL[level];
+            int lastE = A.length - 1;
+            int L[] = new int[A.length];
+            for (int e = 0; e <= lastE; ++e)
+                L[e] = GF_LOG[A[lastE - e]];
+            ERROR_LEVEL_LOG[level] = L;
+        }
+    }
+    
     /** Holds value of property outBits. */
     private byte[] outBits;
     
@@ -1551,6 +2695,18 @@ public class BarcodePDF417 {
     /** Holds value of property text. */
     private byte[] text;
     
+    /** The position of the first byte of the text in <CODE>text</CODE>. */
+    private int textOffset;
+    
+    /** The number of bytes of the text. */
+    private int textLength;
+    
+    /** The bytes of the text when they can't be used in place. */
+    private byte[] textWorkspace;
+    
+    /** The template prefix at the start of <CODE>textWorkspace</CODE> or <CODE>null</CODE>. */
+    private byte[] textWorkspacePrefix;
+    
     /** Holds value of property options. */
     private int options;
     
@@ -1560,6 +2716,38 @@ public class BarcodePDF417 {
     /** Holds value of property yHeight. */
     private float yHeight;
     
+    /** Holds value of property paintExecutor. */
+    private ExecutorService paintExecutor;
+    
+    /** The compacted segments of the prefix of the text or <CODE>null</CODE>. */
+    BarcodePDF417Template template;
+    
+    /** The work area of the text compaction. */
+    private int[] textBuffer;
+    
+    /** The state of the greedy text compaction: sub-mode, half codewords and byte shifts. */
+    private int textMode;
+    private int textPtr;
+    private int textFullBytes;
+    
+    /** The type and value of each byte of the text. */
+    private int[] textTypes;
+    
+    /** The number of consecutive digits starting at each byte of the text. */
+    private int[] digitRuns;
+    
+    /** The lowest cost of each prefix and state of the optimal segmentation. */
+    private int[] optCost;
+    
+    /** The prefix and state each lowest cost of the optimal segmentation comes from. */
+    private int[] optFrom;
+    
+    /** The work area of the macro segment id digits. */
+    private final byte[] macroDigits = new byte[10];
+    
+    /** The work area of the numeric compaction, one limb per 15 digits of a group. */
+    private final long[] numberLimbs = new long[44 / NUMBER_LIMB_DIGITS + 1];
+    
     protected static class Segment {
         public char type;
         public int start;
@@ -1572,27 +2760,115 @@ public class BarcodePDF417 {
         }
     }
     
+    /** The segments of the text, held in parallel arrays. <CODE>get</CODE>
+     * returns a snapshot of a segment, changes are made with <CODE>set</CODE>,
+     * <CODE>setType</CODE>, <CODE>setStart</CODE> and <CODE>setEnd</CODE>.
+     * <p>
+     * This is an incompatible change: <CODE>get</CODE> used to return the
+     * <CODE>Segment</CODE> held in the list, so changing its fields changed
+     * the list. Now it returns a copy, and writes to its fields are lost.
+     * Subclasses that change <CODE>get(idx).type</CODE>, <CODE>start</CODE>
+     * or <CODE>end</CODE> must call the setters instead. The protected
+     * <CODE>list</CODE> field is replaced by the arrays.
+     */
     protected static class SegmentList {
-        protected ArrayList list = new ArrayList();
+        protected char[] type = new char[16];
+        protected int[] start = new int[16];
+        protected int[] end = new int[16];
+        protected int size;
         
         public void add(char type, int start, int end) {
-            list.add(new Segment(type, start, end));
+            if (size == this.type.length) {
+                int n = size * 2;
+                char t[] = new char[n];
+                System.arraycopy(this.type, 0, t, 0, size);
+                this.type = t;
+                int s[] = new int[n];
+                System.arraycopy(this.start, 0, s, 0, size);
+                this.start = s;
+                int e[] = new int[n];
+                System.arraycopy(this.end, 0, e, 0, size);
+                this.end = e;
+            }
+            this.type[size] = type;
+            this.start[size] = start;
+            this.end[size] = end;
+            ++size;
         }
 
+        /** Gets a snapshot of a segment. Unlike in earlier versions, changes
+         * to the snapshot are not reflected in the list, use the setters to
+         * change the segment.
+         * @param idx the segment index
+         * @return a copy of the segment or <CODE>null</CODE> if the index is out of range
+         */
         public Segment get(int idx) {
-            if (idx < 0 || idx >= list.size())
+            if (idx < 0 || idx >= size)
                 return null;
-            return (Segment)list.get(idx);
+            return new Segment(type[idx], start[idx], end[idx]);
         }
 
         public void remove(int idx) {
-            if (idx < 0 || idx >= list.size())
+            if (idx < 0 || idx >= size)
                 return;
-            list.remove(idx);
+            int n = size - idx - 1;
+            System.arraycopy(type, idx + 1, type, idx, n);
+            System.arraycopy(start, idx + 1, start, idx, n);
+            System.arraycopy(end, idx + 1, end, idx, n);
+            --size;
+        }
+        
+        /** Changes a segment.
+         * @param idx the segment index
+         * @param type the new type
+         * @param start the new start
+         * @param end the new end
+         */
+        public void set(int idx, char type, int start, int end) {
+            checkIndex(idx);
+            this.type[idx] = type;
+            this.start[idx] = start;
+            this.end[idx] = end;
+        }
+        
+        /** Changes the type of a segment.
+         * @param idx the segment index
+         * @param type the new type
+         */
+        public void setType(int idx, char type) {
+            checkIndex(idx);
+            this.type[idx] = type;
+        }
+        
+        /** Changes the start of a segment.
+         * @param idx the segment index
+         * @param start the new start
+         */
+        public void setStart(int idx, int start) {
+            checkIndex(idx);
+            this.start[idx] = start;
+        }
+        
+        /** Changes the end of a segment.
+         * @param idx the segment index
+         * @param end the new end
+         */
+        public void setEnd(int idx, int end) {
+            checkIndex(idx);
+            this.end[idx] = end;
+        }
+        
+        private void checkIndex(int idx) {
+            if (idx < 0 || idx >= size)
+                throw new IndexOutOfBoundsException("Invalid segment index.");
+        }
+        
+        public void clear() {
+            size = 0;
         }
         
         public int size() {
-            return list.size();
+            return size;
         }
     }
 }
@@ -0,0 +1,273 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+package com.lowagie.text.pdf;
+
+/** An immutable bit matrix of a barcode. Each row is held in 64 bit words
+ * with the leftmost module in the most significant bit of the first word and
+ * the bits after the last module cleared, so rows can be processed a word
+ * at a time. A set bit is a dark module.
+ */
+public class BarcodePDF417BitMatrix {
+
+    private final long[] bits;
+    private final int width;
+    private final int height;
+    private final int rowWords;
+    
+    /** Creates a new <CODE>BarcodePDF417BitMatrix</CODE> that owns <CODE>bits</CODE>.
+     * @param bits the rows, <CODE>(width + 63) / 64</CODE> words each
+     * @param width the number of columns
+     * @param height the number of rows
+     */
+    BarcodePDF417BitMatrix(long[] bits, int width, int height) {
+        this.bits = bits;
+        this.width = width;
+        this.height = height;
+        this.rowWords = (width + 63) >>> 6;
+    }
+    
+    /** Creates a bit matrix from a raw bitmap with each row starting at a byte boundary.
+     * @param outBits the raw bitmap
+     * @param width the number of X pixels of <CODE>outBits</CODE>
+     * @param height the number of rows of <CODE>outBits</CODE>
+     * @return the bit matrix
+     */
+    static BarcodePDF417BitMatrix fromBytes(byte[] outBits, int width, int height) {
+        int rowWords = (width + 63) >>> 6;
+        int stride = (width + 7) >>> 3;
+        long bits[] = new long[rowWords * height];
+        long mask = lastWordMask(width);
+        for (int y = 0; y < height; ++y) {
+            int p = y * stride;
+            int end = p + stride;
+            int w = y * rowWords;
+            for (int k = 0; k < rowWords; ++k) {
+                long v = 0;
+                for (int j = 0; j < 8; ++j) {
+                    v <<= 8;
+                    if (p < end)
+                        v |= outBits[p++] & 0xff;
+                }
+                bits[w + k] = v;
+            }
+            bits[w + rowWords - 1] &= mask;
+        }
+        return new BarcodePDF417BitMatrix(bits, width, height);
+    }
+    
+    private static long lastWordMask(int width) {
+        int used = width & 63;
+        return used == 0 ? -1L : -1L << (64 - used);
+    }
+    
+    /** Gets the number of columns.
+     * @return the number of columns
+     */
+    public int getWidth() {
+        return width;
+    }
+    
+    /** Gets the number of rows.
+     * @return the number of rows
+     */
+    public int getHeight() {
+        return height;
+    }
+    
+    /** Gets the number of 64 bit words of each row.
+     * @return the number of words of each row
+     */
+    public int getRowWords() {
+        return rowWords;
+    }
+    
+    /** Gets the value of a module.
+     * @param x the column
+     * @param y the row
+     * @return <CODE>true</CODE> if the module is dark
+     */
+    public boolean get(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            throw new IndexOutOfBoundsException("Invalid module position.");
+        return (bits[y * rowWords + (x >>> 6)] << (x & 63)) < 0;
+    }
+    
+    /** Copies the words of a row.
+     * @param y the row
+     * @param row the array to copy to, it is allocated if <CODE>null</CODE> or
+     * shorter than <CODE>getRowWords()</CODE>
+     * @return the array with the row
+     */
+    public long[] getRow(int y, long[] row) {
+        if (y < 0 || y >= height)
+            throw new IndexOutOfBoundsException("Invalid row.");
+        if (row == null || row.length < rowWords)
+            row = new long[rowWords];
+        System.arraycopy(bits, y * rowWords, row, 0, rowWords);
+        return row;
+    }
+    
+    /** Finds the first dark module of a row at or after a column.
+     * @param y the row
+     * @param from the first column to check, not negative
+     * @return the column of the dark module or <CODE>getWidth()</CODE> if there is none
+     */
+    public int nextSet(int y, int from) {
+        checkScan(y, from);
+        if (from >= width)
+            return width;
+        int base = y * rowWords;
+        int w = from >>> 6;
+        long word = bits[base + w] & (-1L >>> (from & 63));
+        while (word == 0) {
+            if (++w == rowWords)
+                return width;
+            word = bits[base + w];
+        }
+        return (w << 6) + Long.numberOfLeadingZeros(word);
+    }
+    
+    /** Finds the first light module of a row at or after a column.
+     * @param y the row
+     * @param from the first column to check, not negative
+     * @return the column of the light module or <CODE>getWidth()</CODE> if there is none
+     */
+    public int nextClear(int y, int from) {
+        checkScan(y, from);
+        if (from >= width)
+            return width;
+        int base = y * rowWords;
+        int w = from >>> 6;
+        long word = ~bits[base + w] & (-1L >>> (from & 63));
+        while (word == 0) {
+            if (++w == rowWords)
+                return width;
+            word = ~bits[base + w];
+        }
+        return Math.min(width, (w << 6) + Long.numberOfLeadingZeros(word));
+    }
+    
+    private void checkScan(int y, int from) {
+        if (y < 0 || y >= height)
+            throw new IndexOutOfBoundsException("Invalid row.");
+        if (from < 0)
+            throw new IndexOutOfBoundsException("Invalid column.");
+    }
+    
+    /** Gets the dark runs of a row as pairs of start column and length.
+     * @param y the row
+     * @param runs the array to fill, <CODE>getWidth() + 1</CODE> is always enough
+     * @return the number of runs
+     */
+    public int getRuns(int y, int[] runs) {
+        if (y < 0 || y >= height)
+            throw new IndexOutOfBoundsException("Invalid row.");
+        int n = 0;
+        int x = nextSet(y, 0);
+        while (x < width) {
+            int end = nextClear(y, x);
+            runs[n++] = x;
+            runs[n++] = end - x;
+            x = nextSet(y, end);
+        }
+        return n / 2;
+    }
+    
+    /** Creates the inverted matrix, a word at a time.
+     * @return the inverted matrix
+     */
+    public BarcodePDF417BitMatrix invert() {
+        long b[] = new long[bits.length];
+        long mask = lastWordMask(width);
+        for (int k = 0; k < b.length; ++k)
+            b[k] = ~bits[k];
+        for (int k = rowWords - 1; k < b.length; k += rowWords)
+            b[k] &= mask;
+        return new BarcodePDF417BitMatrix(b, width, height);
+    }
+    
+    /** Creates the transposed matrix, with the rows as columns.
+     * @return the transposed matrix
+     */
+    public BarcodePDF417BitMatrix transpose() {
+        int tWords = (height + 63) >>> 6;
+        long b[] = new long[tWords * width];
+        for (int y = 0; y < height; ++y) {
+            long bit = 1L << (63 - (y & 63));
+            int col = y >>> 6;
+            int x = nextSet(y, 0);
+            while (x < width) {
+                int end = nextClear(y, x);
+                for (; x < end; ++x)
+                    b[x * tWords + col] |= bit;
+                x = nextSet(y, end);
+            }
+        }
+        return new BarcodePDF417BitMatrix(b, height, width);
+    }
+    
+    /** Gets the raw bitmap with each row starting at a byte boundary and
+     * the bits after the last module of each row cleared. It is the same as
+     * <CODE>BarcodePDF417.getOutBits()</CODE> except with
+     * <CODE>PDF417_INVERT_BITMAP</CODE>, where <CODE>getOutBits()</CODE> has
+     * those bits set.
+     * @return the raw bitmap
+     */
+    public byte[] toBytes() {
+        int stride = (width + 7) >>> 3;
+        byte out[] = new byte[stride * height];
+        int p = 0;
+        for (int y = 0; y < height; ++y) {
+            int w = y * rowWords;
+            for (int k = 0; k < stride; ++k)
+                out[p++] = (byte)(bits[w + (k >>> 3)] >>> (56 - ((k & 7) << 3)));
+        }
+        return out;
+    }
+}
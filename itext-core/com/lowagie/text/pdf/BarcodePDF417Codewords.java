@@ -0,0 +1,109 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+package com.lowagie.text.pdf;
+
+/** The immutable data codewords of a PDF417 barcode, made by
+ * <CODE>BarcodePDF417.compile()</CODE>. They hold the segmented and
+ * compacted text, without padding and error correction, and can be
+ * painted with any layout and error level by
+ * <CODE>BarcodePDF417.paintCodewords(BarcodePDF417Codewords)</CODE> or
+ * <CODE>BarcodePDF417Encoder.encode(BarcodePDF417Codewords)</CODE>.
+ */
+public class BarcodePDF417Codewords {
+
+    private final int[] codewords;
+    private final int macroIndex;
+    
+    /** Creates a new <CODE>BarcodePDF417Codewords</CODE> with a copy of the codewords.
+     * @param codewords the data codewords starting with the length descriptor
+     * @param length the number of data codewords
+     * @param macroIndex the position of the macro control block or -1 if there is none
+     */
+    BarcodePDF417Codewords(int[] codewords, int length, int macroIndex) {
+        this.codewords = new int[length];
+        System.arraycopy(codewords, 0, this.codewords, 0, length);
+        this.macroIndex = macroIndex;
+    }
+    
+    /** Gets the number of data codewords, including the length descriptor.
+     * @return the number of data codewords
+     */
+    public int getLength() {
+        return codewords.length;
+    }
+    
+    /** Gets a copy of the data codewords. The first one is the length descriptor.
+     * @return the data codewords
+     */
+    public int[] getCodewords() {
+        int c[] = new int[codewords.length];
+        System.arraycopy(codewords, 0, c, 0, c.length);
+        return c;
+    }
+    
+    /** Checks if the codewords end with a macro PDF417 control block.
+     * @return <CODE>true</CODE> if there is a macro control block
+     */
+    public boolean isMacro() {
+        return macroIndex >= 0;
+    }
+    
+    int getMacroIndex() {
+        return macroIndex;
+    }
+    
+    /** Copies the data codewords.
+     * @param dest the destination
+     * @return the number of data codewords
+     */
+    int copyTo(int[] dest) {
+        System.arraycopy(codewords, 0, dest, 0, codewords.length);
+        return codewords.length;
+    }
+}
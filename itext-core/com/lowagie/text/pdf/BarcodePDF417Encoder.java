@@ -0,0 +1,518 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/** A PDF417 encoder with an immutable configuration. The configuration
+ * is taken from a <CODE>BarcodePDF417</CODE> when the encoder is created
+ * and later changes to that instance have no effect.
+ * <p>
+ * A single instance can be shared by any number of threads. Each thread
+ * encodes in its own <CODE>BarcodePDF417</CODE> workspace that is reused
+ * from call to call.
+ */
+public class BarcodePDF417Encoder {
+
+    private static final byte EMPTY[] = new byte[0];
+    /** The number of lengths after a macro segment length that doesn't fit that
+     * are still tried. The default segmentation only changes at the end of the
+     * text when a digit run grows to 13 digits or a text run to 5 characters,
+     * which saves codewords for the next few lengths only.
+     */
+    static final int MACRO_WINDOW = 16;
+
+    private final int options;
+    private final float aspectRatio;
+    private final float yHeight;
+    private final int errorLevel;
+    private final int codeRows;
+    private final int codeColumns;
+    private final int macroSegmentId;
+    private final int macroSegmentCount;
+    private final String macroFileId;
+    private final ExecutorService paintExecutor;
+    
+    /** The per thread workspaces. */
+    private final ThreadLocal workspace = new ThreadLocal();
+    
+    /** Creates a new <CODE>BarcodePDF417Encoder</CODE> with the configuration
+     * of <CODE>settings</CODE>: options, aspect ratio, Y height, error level,
+     * code rows and columns, the macro PDF417 fields and the paint executor. The option
+     * <CODE>PDF417_USE_RAW_CODEWORDS</CODE> is ignored.
+     * @param settings the barcode holding the configuration
+     */
+    public BarcodePDF417Encoder(BarcodePDF417 settings) {
+        this.options = settings.getOptions() & ~BarcodePDF417.PDF417_USE_RAW_CODEWORDS;
+        this.aspectRatio = settings.getAspectRatio();
+        this.yHeight = settings.getYHeight();
+        this.errorLevel = settings.getErrorLevel();
+        this.codeRows = settings.getCodeRows();
+        this.codeColumns = settings.getCodeColumns();
+        this.macroSegmentId = settings.getMacroSegmentId();
+        this.macroSegmentCount = settings.getMacroSegmentCount();
+        this.macroFileId = settings.getMacroFileId();
+        this.paintExecutor = settings.getPaintExecutor();
+    }
+    
+    /** Encodes the bytes. This bytes should be interpreted in the codepage Cp437.
+     * This method can be called concurrently from several threads.
+     * @param text the bytes that form the barcode
+     * @return the encoded barcode
+     */
+    public BarcodePDF417Result encode(byte[] text) {
+        BarcodePDF417 barcode = getWorkspace();
+        barcode.setText(text);
+        return paint(barcode);
+    }
+    
+    /** Encodes a part of an array. This bytes should be interpreted in the
+     * codepage Cp437. The bytes are not copied. This method can be called
+     * concurrently from several threads.
+     * @param text the array holding the bytes that form the barcode
+     * @param offset the position of the first byte
+     * @param length the number of bytes
+     * @return the encoded barcode
+     */
+    public BarcodePDF417Result encode(byte[] text, int offset, int length) {
+        BarcodePDF417 barcode = getWorkspace();
+        barcode.setText(text, offset, length);
+        return paint(barcode);
+    }
+    
+    /** Encodes the remaining bytes of a buffer without changing its position.
+     * This bytes should be interpreted in the codepage Cp437. This method can be
+     * called concurrently from several threads.
+     * @param text the buffer holding the bytes that form the barcode
+     * @return the encoded barcode
+     * @see BarcodePDF417#setText(ByteBuffer)
+     */
+    public BarcodePDF417Result encode(ByteBuffer text) {
+        BarcodePDF417 barcode = getWorkspace();
+        barcode.setText(text);
+        return paint(barcode);
+    }
+    
+    /** Encodes the prefix of a template followed by a suffix in the workspace
+     * of the current thread.
+     * @param barcode the workspace
+     * @param prefix the prefix
+     * @param suffix the bytes after the prefix
+     * @return the encoded barcode
+     */
+    BarcodePDF417Result encode(BarcodePDF417 barcode, byte[] prefix, byte[] suffix) {
+        barcode.setTemplateText(prefix, suffix);
+        return paint(barcode);
+    }
+    
+    /** Paints the text of the workspace and releases it.
+     * @param barcode the workspace
+     * @return the encoded barcode
+     */
+    private BarcodePDF417Result paint(BarcodePDF417 barcode) {
+        try {
+            barcode.paintCode();
+            return new BarcodePDF417Result(barcode.getOutBits(), barcode.getBitColumns(),
+                barcode.getCodeRows(), barcode.getCodeColumns(), barcode.getErrorLevel(), yHeight);
+        }
+        finally {
+            barcode.setText(EMPTY);
+        }
+    }
+    
+    /** Encodes the text. This text is converted to bytes using the encoding Cp437.
+     * This method can be called concurrently from several threads.
+     * @param text the text that will form the barcode
+     * @return the encoded barcode
+     */
+    public BarcodePDF417Result encode(String text) {
+        BarcodePDF417 barcode = getWorkspace();
+        barcode.setText(text);
+        return paint(barcode);
+    }
+    
+    /** Segments and compacts the bytes once. The result can be encoded
+     * by any number of encoders with different layouts. This bytes should be
+     * interpreted in the codepage Cp437. This method can be called concurrently
+     * from several threads.
+     * @param text the bytes that form the barcode
+     * @return the data codewords
+     */
+    public BarcodePDF417Codewords compile(byte[] text) {
+        BarcodePDF417 barcode = getWorkspace();
+        barcode.setText(text);
+        return compile(barcode);
+    }
+    
+    private static BarcodePDF417Codewords compile(BarcodePDF417 barcode) {
+        try {
+            return barcode.compile();
+        }
+        finally {
+            barcode.setText(EMPTY);
+        }
+    }
+    
+    /** Segments and compacts the text once. This text is converted to bytes
+     * using the encoding Cp437.
+     * @param text the text that will form the barcode
+     * @return the data codewords
+     */
+    public BarcodePDF417Codewords compile(String text) {
+        BarcodePDF417 barcode = getWorkspace();
+        barcode.setText(text);
+        return compile(barcode);
+    }
+    
+    /** Encodes data codewords made by <CODE>compile</CODE> with the layout and
+     * error level of this encoder. This method can be called concurrently from
+     * several threads.
+     * @param data the data codewords
+     * @return the encoded barcode
+     */
+    public BarcodePDF417Result encode(BarcodePDF417Codewords data) {
+        BarcodePDF417 barcode = getWorkspace();
+        barcode.paintCodewords(data);
+        return new BarcodePDF417Result(barcode.getOutBits(), barcode.getBitColumns(),
+            barcode.getCodeRows(), barcode.getCodeColumns(), barcode.getErrorLevel(), yHeight);
+    }
+    
+    /** Splits the bytes in macro PDF417 segments and encodes them. The bytes
+     * can be of any size. Each segment, in order, takes the longest part of
+     * the remaining bytes that still fits in a barcode with the configured
+     * layout and error level. This is not always the least number of
+     * segments, a segment that starts inside a text run may need a latch.
+     * The segments are identified by the configured file id, the configured
+     * segment id and count are not used.
+     * <p>
+     * The segments are encoded in parallel in <CODE>executor</CODE> or in the
+     * calling thread if it is <CODE>null</CODE>. This method can be called
+     * concurrently from several threads.
+     * @param text the bytes that form the barcodes
+     * @param executor the executor that encodes the segments or <CODE>null</CODE>
+     * @return the encoded segments in order
+     * @throws InterruptedException if interrupted while waiting for the segments
+     */
+    public BarcodePDF417Result[] encodeMacro(byte[] text, ExecutorService executor) throws InterruptedException {
+        int ends[] = splitMacro(text);
+        int count = ends.length;
+        BarcodePDF417Result results[] = new BarcodePDF417Result[count];
+        if (executor == null) {
+            int start = 0;
+            for (int k = 0; k < count; ++k) {
+                results[k] = encodeSegment(text, start, ends[k] - start, k, count);
+                start = ends[k];
+            }
+            return results;
+        }
+        Future futures[] = new Future[count];
+        try {
+            int start = 0;
+            for (int k = 0; k < count; ++k) {
+                futures[k] = executor.submit(new SegmentTask(text, start, ends[k] - start, k, count));
+                start = ends[k];
+            }
+            for (int k = 0; k < count; ++k)
+                results[k] = (BarcodePDF417Result)futures[k].get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new IllegalStateException(cause);
+        }
+        finally {
+            for (int k = 0; k < count; ++k) {
+                if (futures[k] != null)
+                    futures[k].cancel(false);
+            }
+        }
+        return results;
+    }
+    
+    /** Splits the text in macro PDF417 segments and encodes them. The text
+     * is converted to bytes using the encoding Cp437.
+     * @param text the text that will form the barcodes
+     * @param executor the executor that encodes the segments or <CODE>null</CODE>
+     * @return the encoded segments in order
+     * @throws InterruptedException if interrupted while waiting for the segments
+     * @see #encodeMacro(byte[], ExecutorService)
+     */
+    public BarcodePDF417Result[] encodeMacro(String text, ExecutorService executor) throws InterruptedException {
+        return encodeMacro(PdfEncodings.convertToBytes(text, "cp437"), executor);
+    }
+    
+    /** Splits the bytes in macro PDF417 segments.
+     * @param text the bytes to split
+     * @return the end of each segment
+     */
+    private int[] splitMacro(byte[] text) {
+        int ends[] = new int[8];
+        int pos = 0;
+        for (int id = 0;; ++id) {
+            int remain = text.length - pos;
+            int length = macroSegmentLength(text, pos, remain, remain <= BarcodePDF417.ABSOLUTE_MAX_TEXT_SIZE, id);
+            pos += length;
+            if (id == ends.length) {
+                int e[] = new int[id * 2];
+                System.arraycopy(ends, 0, e, 0, id);
+                ends = e;
+            }
+            ends[id] = pos;
+            if (length == remain) {
+                int e[] = new int[id + 1];
+                System.arraycopy(ends, 0, e, 0, id + 1);
+                return e;
+            }
+        }
+    }
+    
+    /** Finds the length of the next macro PDF417 segment. It is the longest
+     * part of the remaining bytes that fits. The bound of
+     * <CODE>BarcodePDF417.fitLengthBound()</CODE> is tried first and then the
+     * lengths below it by bisection. With
+     * <CODE>PDF417_FORCE_BINARY</CODE> the bound is the length and with
+     * <CODE>PDF417_OPTIMAL_SEGMENTATION</CODE> a part fits whenever a longer
+     * one does. The default segmentation can take less codewords for a longer
+     * part, 13 digits take less than 12, so the <CODE>MACRO_WINDOW</CODE>
+     * lengths after the one found are also tried. Only the last segment has
+     * the terminator codeword and, if it can be the last, all the bytes are
+     * tried first.
+     * @param text the bytes
+     * @param pos the start of the remaining bytes
+     * @param remain the number of remaining bytes
+     * @param last <CODE>true</CODE> if no bytes follow the remaining bytes and
+     * they are not more than the maximum text size
+     * @param id the segment id
+     * @return the length of the segment, it is <CODE>remain</CODE> only for the last segment
+     */
+    int macroSegmentLength(byte[] text, int pos, int remain, boolean last, int id) {
+        BarcodePDF417 barcode = getWorkspace();
+        barcode.setOptions(options | BarcodePDF417.PDF417_USE_MACRO);
+        barcode.setMacroSegmentId(id);
+        try {
+            if (last) {
+                barcode.setMacroSegmentCount(id + 1);
+                if (fits(barcode, text, pos, remain))
+                    return remain;
+            }
+            barcode.setMacroSegmentCount(id + 2);
+            // at least a byte is left for the last segment
+            int bound = barcode.fitLengthBound(text, pos, Math.min(remain - 1, BarcodePDF417.ABSOLUTE_MAX_TEXT_SIZE));
+            if (bound == 0)
+                throw new IndexOutOfBoundsException("The layout is too small for a macro segment.");
+            if ((options & BarcodePDF417.PDF417_FORCE_BINARY) != 0 || fits(barcode, text, pos, bound))
+                return bound;
+            // high + 1 doesn't fit, low fits or is 0
+            int low = 0;
+            int high = bound - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (fits(barcode, text, pos, mid))
+                    low = mid;
+                else
+                    high = mid - 1;
+            }
+            if ((options & BarcodePDF417.PDF417_OPTIMAL_SEGMENTATION) == 0) {
+                for (int length = Math.min(bound, low + MACRO_WINDOW); length > low + 1; --length) {
+                    if (fits(barcode, text, pos, length))
+                        return length;
+                }
+            }
+            if (low == 0)
+                throw new IndexOutOfBoundsException("The layout is too small for a macro segment.");
+            return low;
+        }
+        finally {
+            barcode.setText(EMPTY);
+        }
+    }
+    
+    private static boolean fits(BarcodePDF417 barcode, byte[] text, int start, int length) {
+        barcode.setText(text, start, length);
+        return barcode.fitsLayout();
+    }
+    
+    /** Encodes a macro PDF417 segment in the workspace of the current thread.
+     * @param text the array holding the bytes of the segment
+     * @param start the first byte of the segment
+     * @param length the number of bytes of the segment
+     * @param id the segment id
+     * @param count the number of segments
+     * @return the encoded segment
+     */
+    BarcodePDF417Result encodeSegment(byte[] text, int start, int length, int id, int count) {
+        BarcodePDF417 barcode = getWorkspace();
+        barcode.setOptions(options | BarcodePDF417.PDF417_USE_MACRO);
+        barcode.setMacroSegmentId(id);
+        barcode.setMacroSegmentCount(count);
+        barcode.setText(text, start, length);
+        return paint(barcode);
+    }
+    
+    private class SegmentTask implements Callable {
+        private final byte[] text;
+        private final int start;
+        private final int length;
+        private final int id;
+        private final int count;
+        
+        SegmentTask(byte[] text, int start, int length, int id, int count) {
+            this.text = text;
+            this.start = start;
+            this.length = length;
+            this.id = id;
+            this.count = count;
+        }
+        
+        public Object call() {
+            return encodeSegment(text, start, length, id, count);
+        }
+    }
+    
+    /** Gets the workspace of the current thread with the configuration
+     * of this encoder applied.
+     * @return the workspace
+     */
+    BarcodePDF417 getWorkspace() {
+        BarcodePDF417 barcode = (BarcodePDF417)workspace.get();
+        if (barcode == null) {
+            barcode = new BarcodePDF417();
+            workspace.set(barcode);
+        }
+        barcode.setOptions(options);
+        barcode.setAspectRatio(aspectRatio);
+        barcode.setYHeight(yHeight);
+        barcode.setErrorLevel(errorLevel);
+        barcode.setCodeRows(codeRows);
+        barcode.setCodeColumns(codeColumns);
+        barcode.setMacroSegmentId(macroSegmentId);
+        barcode.setMacroSegmentCount(macroSegmentCount);
+        barcode.setMacroFileId(macroFileId);
+        barcode.setPaintExecutor(paintExecutor);
+        return barcode;
+    }
+    
+    /** Gets the options used to generate the barcode.
+     * @return the options used to generate the barcode
+     */
+    public int getOptions() {
+        return options;
+    }
+    
+    /** Gets the barcode aspect ratio.
+     * @return the barcode aspect ratio
+     */
+    public float getAspectRatio() {
+        return aspectRatio;
+    }
+    
+    /** Gets the Y pixel height relative to X.
+     * @return the Y pixel height relative to X
+     */
+    public float getYHeight() {
+        return yHeight;
+    }
+    
+    /** Gets the error level correction requested for the barcode.
+     * @return the error level correction requested for the barcode
+     */
+    public int getErrorLevel() {
+        return errorLevel;
+    }
+    
+    /** Gets the number of barcode rows requested.
+     * @return the number of barcode rows requested
+     */
+    public int getCodeRows() {
+        return codeRows;
+    }
+    
+    /** Gets the number of barcode data columns requested.
+     * @return the number of barcode data columns requested
+     */
+    public int getCodeColumns() {
+        return codeColumns;
+    }
+    
+    /** Gets the segment id for macro PDF417 encoding.
+     * @return the segment id
+     */
+    public int getMacroSegmentId() {
+        return macroSegmentId;
+    }
+    
+    /** Gets the segment count for macro PDF417 encoding.
+     * @return the number of macro segments
+     */
+    public int getMacroSegmentCount() {
+        return macroSegmentCount;
+    }
+    
+    /** Gets the File ID for macro PDF417 encoding.
+     * @return the file id
+     */
+    public String getMacroFileId() {
+        return macroFileId;
+    }
+    
+    /** Gets the executor that paints the rows of large barcodes.
+     * @return the executor or <CODE>null</CODE>
+     */
+    public ExecutorService getPaintExecutor() {
+        return paintExecutor;
+    }
+}
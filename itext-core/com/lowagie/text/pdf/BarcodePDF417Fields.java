@@ -0,0 +1,271 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+/** Builds the data codewords of a PDF417 barcode from typed fields. The
+ * barcode holds the fields one after the other, as if their text was
+ * concatenated, but each field is compacted by its type: numbers with the
+ * numeric compaction, text with the text compaction and bytes with the byte
+ * compaction. The segments come from the field types, so the fields are not
+ * segmented again and only the bytes of the text segments are classified.
+ * <p>
+ * The fields are still written to a buffer, numbers as their decimal digits,
+ * before they are compacted. A numeric segment can hold several fields and is
+ * compacted in groups of 44 digits that don't follow the fields, and the text
+ * compaction carries its sub-mode from field to field, so a field can't be
+ * compacted on its own without more codewords.
+ * <p>
+ * Consecutive fields of the same type share a segment. Numeric fields with
+ * less than 13 digits in a row and single bytes among other fields are
+ * cheaper as text and become part of the text around them.
+ * <p>
+ * An instance keeps its work areas between calls and is not thread safe.
+ */
+public class BarcodePDF417Fields {
+
+    /** The least number of digits in a row that are worth a numeric segment
+     * among other segments.
+     */
+    private static final int MIN_NUMERIC_DIGITS = 13;
+    
+    /** The least number of digits that are worth a numeric segment when
+     * there are no other segments.
+     */
+    private static final int MIN_NUMERIC_ONLY_DIGITS = 8;
+    
+    private final BarcodePDF417 barcode = new BarcodePDF417();
+    
+    /** The bytes of all the fields. */
+    private byte[] data = new byte[64];
+    
+    private int length;
+    
+    /** The runs of fields of the same type. */
+    private final BarcodePDF417.SegmentList runs = new BarcodePDF417.SegmentList();
+    
+    /** The segments given to the compaction. */
+    private final BarcodePDF417.SegmentList segments = new BarcodePDF417.SegmentList();
+    
+    /** Creates a new <CODE>BarcodePDF417Fields</CODE> with the default options. */
+    public BarcodePDF417Fields() {
+    }
+    
+    /** Creates a new <CODE>BarcodePDF417Fields</CODE> with the options and the
+     * macro PDF417 fields of <CODE>settings</CODE>. The options that choose the
+     * segments and <CODE>PDF417_USE_RAW_CODEWORDS</CODE> are not used, with
+     * <CODE>PDF417_OPTIMAL_TEXT</CODE> or <CODE>PDF417_OPTIMAL_SEGMENTATION</CODE>
+     * the text fields are compacted with the least number of codewords.
+     * @param settings the barcode holding the configuration
+     */
+    public BarcodePDF417Fields(BarcodePDF417 settings) {
+        barcode.setOptions(settings.getOptions() & ~(BarcodePDF417.PDF417_USE_RAW_CODEWORDS | BarcodePDF417.PDF417_FORCE_BINARY));
+        barcode.setMacroSegmentId(settings.getMacroSegmentId());
+        barcode.setMacroSegmentCount(settings.getMacroSegmentCount());
+        barcode.setMacroFileId(settings.getMacroFileId());
+    }
+    
+    /** Adds a number in decimal, with a minus sign if it's negative.
+     * @param value the number
+     */
+    public void addNumber(long value) {
+        addNumber(value, 1);
+    }
+    
+    /** Adds a number in decimal padded with zeros to a minimum number of
+     * digits, with a minus sign if it's negative.
+     * @param value the number
+     * @param minDigits the minimum number of digits, not counting the sign
+     */
+    public void addNumber(long value, int minDigits) {
+        if (value < 0)
+            add('T', (byte)'-');
+        // the digits of a negative number avoid the overflow of Long.MIN_VALUE
+        long v = value > 0 ? -value : value;
+        int n = 0;
+        do {
+            v /= 10;
+            ++n;
+        } while (v != 0);
+        if (n < minDigits)
+            n = minDigits;
+        int end = reserve('N', n);
+        v = value > 0 ? -value : value;
+        for (int k = end - 1; k >= end - n; --k) {
+            data[k] = (byte)('0' - v % 10);
+            v /= 10;
+        }
+    }
+    
+    /** Adds a field of decimal digits, for example with leading zeros.
+     * @param digits the digits from '0' to '9'
+     */
+    public void addDigits(CharSequence digits) {
+        int n = digits.length();
+        for (int k = 0; k < n; ++k) {
+            char c = digits.charAt(k);
+            if (c < '0' || c > '9')
+                throw new IllegalArgumentException("Invalid digit: " + c);
+        }
+        int end = reserve('N', n);
+        for (int k = 0; k < n; ++k)
+            data[end - n + k] = (byte)digits.charAt(k);
+    }
+    
+    /** Adds a text field. The text is converted to bytes using the encoding
+     * Cp437 and the characters that can't be converted are skipped.
+     * @param text the text
+     */
+    public void addText(CharSequence text) {
+        int n = text.length();
+        int end = reserve('T', n);
+        int start = end - n;
+        int count = PdfEncodings.convertToCp437(text, data, start);
+        if (count < n) {
+            length -= n - count;
+            int last = runs.size() - 1;
+            runs.end[last] = length;
+            if (runs.start[last] == length)
+                runs.remove(last);
+        }
+    }
+    
+    /** Adds a text field with bytes in the codepage Cp437.
+     * @param text the array holding the bytes
+     * @param offset the position of the first byte
+     * @param len the number of bytes
+     */
+    public void addText(byte[] text, int offset, int len) {
+        addBytes('T', text, offset, len);
+    }
+    
+    /** Adds a binary field.
+     * @param bytes the array holding the bytes
+     * @param offset the position of the first byte
+     * @param len the number of bytes
+     */
+    public void addBytes(byte[] bytes, int offset, int len) {
+        addBytes('B', bytes, offset, len);
+    }
+    
+    /** Gets the number of bytes of all the fields.
+     * @return the number of bytes
+     */
+    public int getLength() {
+        return length;
+    }
+    
+    /** Removes all the fields. */
+    public void reset() {
+        length = 0;
+        runs.clear();
+    }
+    
+    /** Compacts the fields into data codewords. The fields are kept and more
+     * can be added.
+     * @return the data codewords
+     */
+    public BarcodePDF417Codewords compile() {
+        BarcodePDF417.SegmentList seg = segments;
+        seg.clear();
+        boolean numericOnly = runs.size() == 1 && runs.type[0] == 'N';
+        for (int k = 0; k < runs.size(); ++k) {
+            char type = runs.type[k];
+            int start = runs.start[k];
+            int end = runs.end[k];
+            if (type == 'N' && end - start < (numericOnly ? MIN_NUMERIC_ONLY_DIGITS : MIN_NUMERIC_DIGITS))
+                type = 'T';
+            else if (type == 'B' && end - start == 1 && runs.size() > 1)
+                type = 'T';
+            int last = seg.size() - 1;
+            if (type == 'T' && last >= 0 && seg.type[last] == 'T')
+                seg.end[last] = end;
+            else
+                seg.add(type, start, end);
+        }
+        barcode.setText(data, 0, length);
+        return barcode.compileSegments(seg);
+    }
+    
+    private void add(char type, byte b) {
+        int end = reserve(type, 1);
+        data[end - 1] = b;
+    }
+    
+    private void addBytes(char type, byte[] bytes, int offset, int len) {
+        if (offset < 0 || len < 0 || offset > bytes.length - len)
+            throw new IndexOutOfBoundsException("Invalid field range.");
+        int end = reserve(type, len);
+        System.arraycopy(bytes, offset, data, end - len, len);
+    }
+    
+    /** Makes room for a field at the end of the data and adds it
+     * to the runs.
+     * @param type the segment type of the field
+     * @param n the number of bytes of the field
+     * @return the end of the field
+     */
+    private int reserve(char type, int n) {
+        if (n == 0)
+            return length;
+        if (length + n > data.length) {
+            byte d[] = new byte[Math.max(data.length * 2, length + n)];
+            System.arraycopy(data, 0, d, 0, length);
+            data = d;
+        }
+        int start = length;
+        length += n;
+        int last = runs.size() - 1;
+        if (last >= 0 && runs.type[last] == type)
+            runs.end[last] = length;
+        else
+            runs.add(type, start, length);
+        return length;
+    }
+}
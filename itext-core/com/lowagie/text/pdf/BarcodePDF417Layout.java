@@ -0,0 +1,246 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+/** The rows, data columns and error level of a PDF417 barcode. A layout is
+ * chosen by <CODE>solve</CODE> from the number of data codewords and the
+ * constraints of the label without painting the barcode, and is applied to a
+ * <CODE>BarcodePDF417</CODE> with <CODE>applyTo</CODE>.
+ * <p>
+ * The error level is the one the barcode will really be painted with, that is,
+ * the highest level that fits in the capacity left by the data codewords.
+ */
+public class BarcodePDF417Layout {
+
+    /** Chooses the layout with the smallest area. Among layouts of the same area the one
+     * with the highest error level and then the one closest to the aspect ratio is chosen.
+     */
+    public static final int MINIMUM_AREA = 0;
+    /** Chooses the layout with the highest error level. Among layouts of the same error level
+     * the one with the smallest area and then the one closest to the aspect ratio is chosen.
+     */
+    public static final int MAXIMUM_ERROR_LEVEL = 1;
+    
+    private final int codeRows;
+    private final int codeColumns;
+    private final int errorLevel;
+    private final int lenCodewords;
+    private final float yHeight;
+    
+    private BarcodePDF417Layout(int codeRows, int codeColumns, int errorLevel, int lenCodewords, float yHeight) {
+        this.codeRows = codeRows;
+        this.codeColumns = codeColumns;
+        this.errorLevel = errorLevel;
+        this.lenCodewords = lenCodewords;
+        this.yHeight = yHeight;
+    }
+    
+    /** Finds the best layout for the data codewords.
+     * @param data the data codewords
+     * @param maxWidth the maximum width in modules or 0 for no limit
+     * @param maxHeight the maximum height in modules or 0 for no limit
+     * @param minErrorLevel the minimum error level, from 0 to 8
+     * @param aspectRatio the preferred height to width ratio or 0 for no preference
+     * @param yHeight the Y pixel height relative to X
+     * @param objective <CODE>MINIMUM_AREA</CODE> or <CODE>MAXIMUM_ERROR_LEVEL</CODE>
+     * @return the layout or <CODE>null</CODE> if no layout fits
+     */
+    public static BarcodePDF417Layout solve(BarcodePDF417Codewords data, float maxWidth, float maxHeight, int minErrorLevel, float aspectRatio, float yHeight, int objective) {
+        return solve(data.getLength(), maxWidth, maxHeight, minErrorLevel, aspectRatio, yHeight, objective);
+    }
+    
+    /** Finds the best layout for a number of data codewords. The width of a
+     * barcode with <CODE>c</CODE> data columns is <CODE>17 * c + 69</CODE> modules
+     * and the height of a barcode with <CODE>r</CODE> rows is <CODE>r * yHeight</CODE>
+     * modules. Only the best number of rows for each number of columns is
+     * evaluated, so the search takes at most 30 steps.
+     * @param lenCodewords the number of data codewords, including the length descriptor
+     * and the macro control block
+     * @param maxWidth the maximum width in modules or 0 for no limit
+     * @param maxHeight the maximum height in modules or 0 for no limit
+     * @param minErrorLevel the minimum error level, from 0 to 8
+     * @param aspectRatio the preferred height to width ratio or 0 for no preference
+     * @param yHeight the Y pixel height relative to X
+     * @param objective <CODE>MINIMUM_AREA</CODE> or <CODE>MAXIMUM_ERROR_LEVEL</CODE>
+     * @return the layout or <CODE>null</CODE> if no layout fits
+     */
+    public static BarcodePDF417Layout solve(int lenCodewords, float maxWidth, float maxHeight, int minErrorLevel, float aspectRatio, float yHeight, int objective) {
+        if (lenCodewords < 1)
+            throw new IllegalArgumentException("Invalid codeword size.");
+        if (yHeight <= 0)
+            throw new IllegalArgumentException("The Y height must be positive.");
+        if (objective != MINIMUM_AREA && objective != MAXIMUM_ERROR_LEVEL)
+            throw new IllegalArgumentException("Invalid layout objective.");
+        if (minErrorLevel < 0)
+            minErrorLevel = 0;
+        else if (minErrorLevel > 8)
+            minErrorLevel = 8;
+        int maxTot = BarcodePDF417.MAX_DATA_CODEWORDS + 2;
+        int maxRows = 90;
+        if (maxHeight > 0)
+            maxRows = Math.min(maxRows, (int)(maxHeight / yHeight));
+        int maxCols = 30;
+        if (maxWidth > 0)
+            maxCols = Math.min(maxCols, ((int)maxWidth - 69) / 17);
+        int bestRows = 0, bestCols = 0, bestLevel = -1;
+        float bestArea = 0;
+        double bestSkew = 0;
+        for (int cols = 1; cols <= maxCols; ++cols) {
+            int rowLimit = Math.min(maxRows, maxTot / cols);
+            if (rowLimit < 3)
+                break;
+            int level;
+            if (objective == MAXIMUM_ERROR_LEVEL) {
+                // the highest level of this column count, with the fewest rows that reach it
+                level = BarcodePDF417.maxPossibleErrorLevel(rowLimit * cols - lenCodewords);
+                if (level < minErrorLevel || rowLimit * cols < lenCodewords + (2 << level))
+                    continue;
+            }
+            else
+                level = minErrorLevel;
+            int rows = Math.max(3, (lenCodewords + (2 << level) - 1) / cols + 1);
+            if (rows > rowLimit)
+                continue;
+            level = BarcodePDF417.maxPossibleErrorLevel(rows * cols - lenCodewords);
+            float width = 17 * cols + 69;
+            float height = rows * yHeight;
+            float area = width * height;
+            // how far the ratio is from the preferred one, in either direction
+            double skew = 0;
+            if (aspectRatio > 0) {
+                skew = height / (width * aspectRatio);
+                if (skew < 1)
+                    skew = 1 / skew;
+            }
+            if (bestLevel >= 0) {
+                int cmp;
+                if (objective == MAXIMUM_ERROR_LEVEL)
+                    cmp = level != bestLevel ? level - bestLevel : Float.compare(bestArea, area);
+                else
+                    cmp = area != bestArea ? Float.compare(bestArea, area) : level - bestLevel;
+                if (cmp < 0 || (cmp == 0 && skew >= bestSkew))
+                    continue;
+            }
+            bestRows = rows;
+            bestCols = cols;
+            bestLevel = level;
+            bestArea = area;
+            bestSkew = skew;
+        }
+        if (bestLevel < 0)
+            return null;
+        return new BarcodePDF417Layout(bestRows, bestCols, bestLevel, lenCodewords, yHeight);
+    }
+    
+    /** Sets the options, the rows, the data columns, the error level and the Y height
+     * of the barcode so that it's painted with this layout. The barcode text
+     * must compact to the number of data codewords used to find this layout.
+     * @param barcode the barcode
+     */
+    public void applyTo(BarcodePDF417 barcode) {
+        int options = barcode.getOptions();
+        options &= ~(BarcodePDF417.PDF417_FIXED_COLUMNS | BarcodePDF417.PDF417_FIXED_ROWS);
+        options |= BarcodePDF417.PDF417_FIXED_RECTANGLE | BarcodePDF417.PDF417_USE_ERROR_LEVEL;
+        barcode.setOptions(options);
+        barcode.setCodeRows(codeRows);
+        barcode.setCodeColumns(codeColumns);
+        barcode.setErrorLevel(errorLevel);
+        barcode.setYHeight(yHeight);
+    }
+    
+    /** Gets the number of rows.
+     * @return the number of rows
+     */
+    public int getCodeRows() {
+        return codeRows;
+    }
+    
+    /** Gets the number of data columns.
+     * @return the number of data columns
+     */
+    public int getCodeColumns() {
+        return codeColumns;
+    }
+    
+    /** Gets the error level correction.
+     * @return the error level correction
+     */
+    public int getErrorLevel() {
+        return errorLevel;
+    }
+    
+    /** Gets the number of padding codewords added to the data codewords.
+     * @return the number of padding codewords
+     */
+    public int getPadding() {
+        return codeRows * codeColumns - lenCodewords - (2 << errorLevel);
+    }
+    
+    /** Gets the number of X pixels of the raw bitmap, that is, the width in modules.
+     * @return the number of X pixels
+     */
+    public int getBitColumns() {
+        return 17 * codeColumns + 69;
+    }
+    
+    /** Gets the height in modules.
+     * @return the height in modules
+     */
+    public float getHeight() {
+        return codeRows * yHeight;
+    }
+    
+    /** Gets the Y pixel height relative to X.
+     * @return the Y pixel height relative to X
+     */
+    public float getYHeight() {
+        return yHeight;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+package com.lowagie.text.pdf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/** Reads a payload of any size from a stream and encodes it in macro PDF417
+ * segments, one at a time. At most one barcode worth of bytes is held in
+ * memory. The segments are the same as the ones of
+ * <CODE>BarcodePDF417Encoder.encodeMacro</CODE> with the whole payload.
+ * <p>
+ * An instance must be used by a single thread.
+ */
+public class BarcodePDF417MacroReader {
+
+    private final BarcodePDF417Encoder encoder;
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    
+    /** The bytes not yet encoded. One more than a barcode can hold tells if
+     * the remaining bytes can be the last segment.
+     */
+    private final byte buffer[] = new byte[BarcodePDF417.ABSOLUTE_MAX_TEXT_SIZE + 1];
+    private ByteBuffer channelBuffer;
+    private int length;
+    private boolean eof;
+    private boolean done;
+    private int segmentId;
+    
+    /** Creates a reader of the bytes of an <CODE>InputStream</CODE>.
+     * @param encoder the encoder with the layout and the macro file id
+     * @param in the bytes to encode. It is not closed
+     */
+    public BarcodePDF417MacroReader(BarcodePDF417Encoder encoder, InputStream in) {
+        this.encoder = encoder;
+        this.in = in;
+        this.channel = null;
+    }
+    
+    /** Creates a reader of the bytes of a blocking <CODE>ReadableByteChannel</CODE>.
+     * @param encoder the encoder with the layout and the macro file id
+     * @param channel the bytes to encode. It is not closed
+     */
+    public BarcodePDF417MacroReader(BarcodePDF417Encoder encoder, ReadableByteChannel channel) {
+        this.encoder = encoder;
+        this.in = null;
+        this.channel = channel;
+    }
+    
+    /** Reads the bytes of the next segment and encodes them.
+     * @throws IOException on error
+     * @return the next segment or <CODE>null</CODE> if all the bytes were encoded
+     */
+    public BarcodePDF417Result next() throws IOException {
+        if (done)
+            return null;
+        fill();
+        boolean last = eof && length <= BarcodePDF417.ABSOLUTE_MAX_TEXT_SIZE;
+        int n = encoder.macroSegmentLength(buffer, 0, length, last, segmentId);
+        done = n == length;
+        BarcodePDF417Result result = encoder.encodeSegment(buffer, 0, n,
+            segmentId, done ? segmentId + 1 : segmentId + 2);
+        System.arraycopy(buffer, n, buffer, 0, length - n);
+        length -= n;
+        ++segmentId;
+        return result;
+    }
+    
+    /** Gets the id of the segment returned by the next call to <CODE>next()</CODE>.
+     * @return the segment id
+     */
+    public int getSegmentId() {
+        return segmentId;
+    }
+    
+    private void fill() throws IOException {
+        while (!eof && length < buffer.length) {
+            int n;
+            if (in != null)
+                n = in.read(buffer, length, buffer.length - length);
+            else {
+                if (channelBuffer == null)
+                    channelBuffer = ByteBuffer.wrap(buffer);
+                channelBuffer.limit(buffer.length);
+                channelBuffer.position(length);
+                n = channel.read(channelBuffer);
+            }
+            if (n < 0)
+                eof = true;
+            else
+                length += n;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+import java.awt.Color;
+import java.awt.Image;
+
+/** The immutable result of a PDF417 encoding made by
+ * <CODE>BarcodePDF417Encoder</CODE>. It holds the raw bitmap
+ * and the dimensions that were used to build it.
+ */
+public class BarcodePDF417Result implements Barcode {
+
+    private final byte[] outBits;
+    private final int bitColumns;
+    private final int codeRows;
+    private final int codeColumns;
+    private final int errorLevel;
+    private final float yHeight;
+    
+    /** Creates a new <CODE>BarcodePDF417Result</CODE>. The array
+     * <CODE>outBits</CODE> is owned by the new instance and must not be
+     * changed afterwards.
+     * @param outBits the raw bitmap
+     * @param bitColumns the number of X pixels of <CODE>outBits</CODE>
+     * @param codeRows the number of rows
+     * @param codeColumns the number of data columns
+     * @param errorLevel the error level correction used
+     * @param yHeight the Y pixel height relative to X
+     */
+    BarcodePDF417Result(byte[] outBits, int bitColumns, int codeRows, int codeColumns, int errorLevel, float yHeight) {
+        this.outBits = outBits;
+        this.bitColumns = bitColumns;
+        this.codeRows = codeRows;
+        this.codeColumns = codeColumns;
+        this.errorLevel = errorLevel;
+        this.yHeight = yHeight;
+    }
+    
+    /** Gets a copy of the raw image bits of the barcode. Each row starts
+     * at a byte boundary. The image will have to be scaled in the Y direction
+     * by <CODE>yHeight</CODE>.
+     * @return the raw barcode image
+     */
+    public byte[] getOutBits() {
+        byte b[] = new byte[outBits.length];
+        System.arraycopy(outBits, 0, b, 0, b.length);
+        return b;
+    }
+    
+    /** Gets the value of a single module of the raw bitmap.
+     * @param x the X pixel, from 0 to <CODE>getBitColumns() - 1</CODE>
+     * @param y the row, from 0 to <CODE>getCodeRows() - 1</CODE>
+     * @return <CODE>true</CODE> if the bit is set
+     */
+    public boolean get(int x, int y) {
+        if (x < 0 || x >= bitColumns || y < 0 || y >= codeRows)
+            throw new IndexOutOfBoundsException("Invalid module position.");
+        return (outBits[y * ((bitColumns + 7) / 8) + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+    
+    /** Gets the barcode as a bit matrix.
+     * @return the bit matrix
+     */
+    public BarcodePDF417BitMatrix getBitMatrix() {
+        return BarcodePDF417BitMatrix.fromBytes(outBits, bitColumns, codeRows);
+    }
+    
+    /** Gets the number of X pixels of the raw bitmap.
+     * @return the number of X pixels
+     */
+    public int getBitColumns() {
+        return bitColumns;
+    }
+    
+    /** Gets the number of rows in the barcode.
+     * @return the number of rows
+     */
+    public int getCodeRows() {
+        return codeRows;
+    }
+    
+    /** Gets the number of barcode data columns.
+     * @return the number of barcode data columns
+     */
+    public int getCodeColumns() {
+        return codeColumns;
+    }
+    
+    /** Gets the error level correction used for the barcode.
+     * @return the error level correction used for the barcode
+     */
+    public int getErrorLevel() {
+        return errorLevel;
+    }
+    
+    /** Gets the Y pixel height relative to X.
+     * @return the Y pixel height relative to X
+     */
+    public float getYHeight() {
+        return yHeight;
+    }
+    
+    /** Creates a <CODE>java.awt.Image</CODE>.
+     * @param foreground the color of the bars
+     * @param background the color of the background
+     * @return the image
+     */    
+    public Image createAwtImage(Color foreground, Color background) {
+        return BarcodePDF417.createAwtImage(outBits, bitColumns, codeRows, (int)yHeight, foreground, background);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+package com.lowagie.text.pdf;
+
+/** Encodes a batch of PDF417 barcodes whose texts start with the same prefix.
+ * The prefix is classified, segmented and compacted once. Each text is still
+ * segmented as a whole, so the barcodes are the same as the ones made by the
+ * encoder with the full text, but the work that only depends on the prefix is
+ * reused: only the bytes after the prefix are classified, the segmentation
+ * resumes after the last numeric segment of the prefix or, with the optimal
+ * segmentation, before its trailing digits, the segments that are also
+ * segments of the prefix alone are copied and the text segment that continues
+ * the last one of the prefix resumes its compaction near the end of the prefix.
+ * The prefix stays in the text work area of each thread, so only the suffix
+ * is copied after it.
+ * <p>
+ * A single instance can be shared by any number of threads.
+ */
+public class BarcodePDF417Template {
+
+    private final BarcodePDF417Encoder encoder;
+    private final byte[] prefix;
+    private final char[] types;
+    private final int[] starts;
+    private final int[] ends;
+    
+    /** The start of the codewords of each segment of the prefix in <CODE>pool</CODE>
+     * and the end of the last one.
+     */
+    final int[] offsets;
+    
+    /** The codewords of the segments of the prefix without the mode latches. */
+    final int[] pool;
+    
+    /** The type and value of each byte of the prefix and the digits starting at it. */
+    int[] prefixTypes;
+    int[] prefixRuns;
+    
+    /** The first pass of the greedy segmentation up to the last numeric segment
+     * that ends before the end of the prefix and the character after it.
+     */
+    BarcodePDF417.SegmentList breakList;
+    int breakResume;
+    
+    /** The character where the optimal segmentation resumes and the costs up to it. */
+    int segResume;
+    int[] segCost;
+    int[] segFrom;
+    
+    /** The start of the last text segment of the prefix and the character where its
+     * compaction resumes, with the greedy state or the optimal costs up to it.
+     */
+    int textStart = -1;
+    int textResume;
+    int textMode;
+    int textPtr;
+    int textFullBytes;
+    int[] textDest;
+    int[] textCost;
+    int[] textFrom;
+    
+    /** Creates a new <CODE>BarcodePDF417Template</CODE>.
+     * @param encoder the encoder with the configuration of the barcodes
+     * @param prefix the bytes that start every text
+     */
+    public BarcodePDF417Template(BarcodePDF417Encoder encoder, byte[] prefix) {
+        this.encoder = encoder;
+        this.prefix = new byte[prefix.length];
+        System.arraycopy(prefix, 0, this.prefix, 0, prefix.length);
+        BarcodePDF417 barcode = encoder.getWorkspace();
+        barcode.setText(this.prefix);
+        try {
+            barcode.segmentText();
+            barcode.saveCheckpoints(this);
+            BarcodePDF417.SegmentList list = barcode.segmentList;
+            int n = list.size();
+            types = new char[n];
+            starts = new int[n];
+            ends = new int[n];
+            offsets = new int[n + 1];
+            int buf[] = new int[BarcodePDF417.MAX_DATA_CODEWORDS + 2];
+            int size = 0;
+            for (int k = 0; k < n; ++k) {
+                types[k] = list.type[k];
+                starts[k] = list.start[k];
+                ends[k] = list.end[k];
+                offsets[k] = size;
+                barcode.cwPtr = 1;
+                try {
+                    barcode.compactSegment(k);
+                }
+                catch (IndexOutOfBoundsException e) {
+                    // too big for a barcode, never used
+                    types[k] = 0;
+                    continue;
+                }
+                int len = barcode.cwPtr - 1;
+                if (size + len > buf.length) {
+                    int b[] = new int[Math.max(buf.length * 2, size + len)];
+                    System.arraycopy(buf, 0, b, 0, size);
+                    buf = b;
+                }
+                System.arraycopy(barcode.getCodewords(), 1, buf, size, len);
+                size += len;
+            }
+            offsets[n] = size;
+            pool = new int[size];
+            System.arraycopy(buf, 0, pool, 0, size);
+        }
+        finally {
+            barcode.setText(new byte[0]);
+        }
+    }
+    
+    /** Finds a segment of the prefix.
+     * @param type the segment type
+     * @param start the start of the segment
+     * @param end the end of the segment
+     * @return the index of the segment or -1 if it is not a segment of the prefix
+     */
+    int find(char type, int start, int end) {
+        if (end > prefix.length)
+            return -1;
+        int lo = 0;
+        int hi = starts.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] < start)
+                lo = mid + 1;
+            else if (starts[mid] > start)
+                hi = mid - 1;
+            else
+                return types[mid] == type && ends[mid] == end ? mid : -1;
+        }
+        return -1;
+    }
+    
+    /** Segments and compacts the prefix followed by the suffix.
+     * This method can be called concurrently from several threads.
+     * @param suffix the bytes after the prefix
+     * @return the data codewords
+     */
+    public BarcodePDF417Codewords compile(byte[] suffix) {
+        BarcodePDF417 barcode = encoder.getWorkspace();
+        barcode.template = this;
+        barcode.setTemplateText(prefix, suffix);
+        try {
+            return barcode.compile();
+        }
+        finally {
+            barcode.template = null;
+            barcode.setText(new byte[0]);
+        }
+    }
+    
+    /** Encodes the prefix followed by the suffix.
+     * This method can be called concurrently from several threads.
+     * @param suffix the bytes after the prefix
+     * @return the encoded barcode
+     */
+    public BarcodePDF417Result encode(byte[] suffix) {
+        BarcodePDF417 barcode = encoder.getWorkspace();
+        barcode.template = this;
+        try {
+            return encoder.encode(barcode, prefix, suffix);
+        }
+        finally {
+            barcode.template = null;
+        }
+    }
+    
+    /** Gets the encoder with the configuration of the barcodes.
+     * @return the encoder
+     */
+    public BarcodePDF417Encoder getEncoder() {
+        return encoder;
+    }
+    
+    /** Gets the number of bytes of the prefix.
+     * @return the number of bytes of the prefix
+     */
+    public int getPrefixLength() {
+        return prefix.length;
+    }
+}
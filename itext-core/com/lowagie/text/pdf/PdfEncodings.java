@@ -206,6 +206,17 @@ public class PdfEncodings {
         }
     }
     
+    /** Converts a <CODE>CharSequence</CODE> to bytes in the codepage Cp437 without
+     * intermediate arrays. The characters that can't be converted are skipped.
+     * @param text the text to be converted
+     * @param b the destination, with room for at least as many bytes as characters
+     * @param offset the position of the first byte in the destination
+     * @return the number of bytes
+     */
+    static int convertToCp437(CharSequence text, byte[] b, int offset) {
+        return Cp437Conversion.charToByte(text, b, offset) - offset;
+    }
+    
     /** Converts a <CODE>String</CODE> to a </CODE>byte</CODE> array according
      * to the font's encoding.
      * @return an array of <CODE>byte</CODE> representing the conversion according to the font's encoding
@@ -611,12 +622,20 @@ public class PdfEncodings {
         private static IntHashtable c2b = new IntHashtable();
         
         public byte[] charToByte(String text, String encoding) {
-            char cc[] = text.toCharArray();
-            byte b[] = new byte[cc.length];
-            int ptr = 0;
-            int len = cc.length;
+            int len = text.length();
+            byte b[] = new byte[len];
+            int ptr = charToByte(text, b, 0);
+            if (ptr == len)
+                return b;
+            byte b2[] = new byte[ptr];
+            System.arraycopy(b, 0, b2, 0, ptr);
+            return b2;
+        }
+        
+        static int charToByte(CharSequence text, byte[] b, int ptr) {
+            int len = text.length();
             for (int k = 0; k < len; ++k) {
-                char c = cc[k];
+                char c = text.charAt(k);
                 if (c < 128)
                     b[ptr++] = (byte)c;
                 else {
@@ -625,11 +644,7 @@ public class PdfEncodings {
                         b[ptr++] = v;
                 }
             }
-            if (ptr == len)
-                return b;
-            byte b2[] = new byte[ptr];
-            System.arraycopy(b, 0, b2, 0, ptr);
-            return b2;
+            return ptr;
         }
         
         public byte[] charToByte(char char1, String encoding) {
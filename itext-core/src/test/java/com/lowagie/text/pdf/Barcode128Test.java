@@ -0,0 +1,250 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Checks that <CODE>getRawTextOptimal</CODE> gives valid codes with the
+ * least number of characters, comparing short texts with every choice of
+ * charset changes and shifts.
+ */
+public class Barcode128Test {
+
+    private static final String ALPHABET = "0123AZaz \u0001\u001f`~" + Barcode128.FNC1;
+
+    private static final int SET_A = 0;
+    private static final int SET_B = 1;
+    private static final int SET_C = 2;
+
+    /** Decodes the raw code back to the text.
+     * @param code the code
+     * @param length the number of characters of the code
+     * @param ucc <CODE>true</CODE> if the code must start with FNC1
+     * @return the text
+     */
+    static String decode(char[] code, int length, boolean ucc) {
+        StringBuffer text = new StringBuffer();
+        int set = code[0] - Barcode128.START_A;
+        assertTrue(set >= SET_A && set <= SET_C);
+        int k = 1;
+        if (ucc)
+            assertEquals(Barcode128.FNC1_INDEX, code[k++]);
+        boolean shift = false;
+        for (; k < length; ++k) {
+            int v = code[k];
+            if (v == Barcode128.FNC1_INDEX) {
+                assertTrue(!shift);
+                text.append(Barcode128.FNC1);
+                continue;
+            }
+            if (set == SET_C) {
+                if (v < 100)
+                    text.append((char)('0' + v / 10)).append((char)('0' + v % 10));
+                else if (v == Barcode128.CODE_AC_TO_B)
+                    set = SET_B;
+                else if (v == Barcode128.CODE_BC_TO_A)
+                    set = SET_A;
+                else
+                    throw new IllegalStateException("Bad code " + v + " in charset C.");
+                continue;
+            }
+            int current = shift ? 1 - set : set;
+            if (v < 96) {
+                text.append((char)(current == SET_A && v >= 64 ? v - 64 : v + ' '));
+                shift = false;
+                continue;
+            }
+            assertTrue(!shift);
+            if (v == Barcode128.SHIFT_INDEX)
+                shift = true;
+            else if (v == Barcode128.CODE_AB_TO_C)
+                set = SET_C;
+            else if (v == Barcode128.CODE_AC_TO_B && set == SET_A)
+                set = SET_B;
+            else if (v == Barcode128.CODE_BC_TO_A && set == SET_B)
+                set = SET_A;
+            else
+                throw new IllegalStateException("Bad code " + v + " in charset " + set + ".");
+        }
+        assertTrue(!shift);
+        return text.toString();
+    }
+
+    /** Finds the least number of characters of the code over every choice
+     * of start charset, charset changes and shifts.
+     */
+    private static class Search {
+        final String text;
+        int best = Integer.MAX_VALUE;
+
+        Search(String text) {
+            this.text = text;
+        }
+
+        void run(int pos, int set, int n, boolean changed) {
+            if (n >= best)
+                return;
+            if (pos == text.length()) {
+                best = n;
+                return;
+            }
+            char c = text.charAt(pos);
+            if (c == Barcode128.FNC1)
+                run(pos + 1, set, n + 1, false);
+            else if (set == SET_C) {
+                if (pos + 1 < text.length() && isDigit(c) && isDigit(text.charAt(pos + 1)))
+                    run(pos + 2, set, n + 1, false);
+            }
+            else {
+                if (in(set, c))
+                    run(pos + 1, set, n + 1, false);
+                else
+                    run(pos + 1, set, n + 2, false);
+            }
+            // a change followed by another one is never needed
+            if (!changed) {
+                for (int t = SET_A; t <= SET_C; ++t) {
+                    if (t != set)
+                        run(pos, t, n + 1, true);
+                }
+            }
+        }
+
+        static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        static boolean in(int set, char c) {
+            return set == SET_A ? c < 96 : c >= ' ';
+        }
+    }
+
+    private static String random(Random random, int length) {
+        StringBuffer text = new StringBuffer();
+        for (int k = 0; k < length; ++k) {
+            String set = random.nextBoolean() ? "0123456789" : ALPHABET;
+            text.append(set.charAt(random.nextInt(set.length())));
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void shortTextsMatchExhaustiveSearch() {
+        Random random = new Random(12);
+        char code[] = new char[40];
+        for (int k = 0; k < 500; ++k) {
+            String text = random(random, 1 + random.nextInt(8));
+            boolean ucc = random.nextBoolean();
+            Search search = new Search(text);
+            for (int set = SET_A; set <= SET_C; ++set)
+                search.run(0, set, ucc ? 2 : 1, true);
+            int n = Barcode128.getRawTextOptimal(text, ucc, code);
+            assertEquals(text, search.best, n);
+            assertEquals(text, decode(code, n, ucc));
+        }
+    }
+
+    @Test
+    public void neverLongerThanDefault() {
+        Random random = new Random(13);
+        for (int k = 0; k < 1000; ++k) {
+            String text = random(random, random.nextInt(100));
+            boolean ucc = random.nextBoolean();
+            char optimal[] = new char[2 * text.length() + 2];
+            char greedy[] = new char[2 * text.length() + 2];
+            int n = Barcode128.getRawTextOptimal(text, ucc, optimal);
+            int m = Barcode128.getRawText(text, ucc, greedy);
+            assertTrue(n <= m);
+            assertEquals(text, decode(optimal, n, ucc));
+            assertEquals(text, decode(greedy, m, ucc));
+        }
+    }
+
+    @Test
+    public void imageRowsAreSharedOnlyOnRequest() {
+        Barcode128 barcode = new Barcode128();
+        barcode.setCode("Code 128 0123456789");
+        barcode.setBarHeight(10);
+        BufferedImage image = (BufferedImage)barcode.createAwtImage(Color.black, Color.white);
+        BufferedImage shared = (BufferedImage)barcode.createAwtImage(Color.black, Color.white, true);
+        assertEquals(image.getWidth(), shared.getWidth());
+        assertEquals(10, shared.getHeight());
+        for (int y = 0; y < image.getHeight(); ++y) {
+            for (int x = 0; x < image.getWidth(); ++x)
+                assertEquals(image.getRGB(x, 0), image.getRGB(x, y));
+            for (int x = 0; x < image.getWidth(); ++x)
+                assertEquals(image.getRGB(x, y), shared.getRGB(x, y));
+        }
+        int bar = image.getRGB(0, 0);
+        image.setRGB(0, 0, 0xffffffff);
+        assertEquals(bar, image.getRGB(0, 9));
+        shared.setRGB(0, 0, 0xffffffff);
+        assertEquals(0xffffffff, shared.getRGB(0, 9));
+    }
+
+    @Test
+    public void signedAIIsAccepted() {
+        char out[] = new char[20];
+        int n = Barcode128.parseUCC("(+1)00000090311314", out);
+        assertEquals("0100000090311314", new String(out, 0, n));
+    }
+
+    @Test(expected=NumberFormatException.class)
+    public void letterAIIsNotANumber() {
+        Barcode128.parseUCC("(ab)123", new char[10]);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Checks the word at a time methods of <CODE>BarcodePDF417BitMatrix</CODE>
+ * against <CODE>get()</CODE> on matrices of every width up to a few words.
+ */
+public class BarcodePDF417BitMatrixTest {
+
+    private static byte[] random(Random random, int width, int height) {
+        byte bits[] = new byte[(width + 7) / 8 * height];
+        random.nextBytes(bits);
+        // long runs cross the word boundaries
+        if (random.nextBoolean()) {
+            for (int k = 0; k < bits.length; ++k)
+                bits[k] = random.nextInt(3) == 0 ? bits[k] : (byte)(random.nextBoolean() ? 0 : -1);
+        }
+        return bits;
+    }
+
+    private static boolean bit(byte[] bits, int width, int x, int y) {
+        return (bits[y * ((width + 7) / 8) + x / 8] & (0x80 >> (x & 7))) != 0;
+    }
+
+    @Test
+    public void scansMatchGet() {
+        Random random = new Random(10);
+        for (int width = 1; width <= 200; ++width) {
+            int height = 1 + random.nextInt(4);
+            byte bits[] = random(random, width, height);
+            BarcodePDF417BitMatrix matrix = BarcodePDF417BitMatrix.fromBytes(bits, width, height);
+            int runs[] = new int[width + 1];
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x)
+                    assertEquals(bit(bits, width, x, y), matrix.get(x, y));
+                int set = width;
+                int clear = width;
+                for (int x = width + 2; x >= 0; --x) {
+                    if (x < width) {
+                        if (matrix.get(x, y))
+                            set = x;
+                        else
+                            clear = x;
+                    }
+                    assertEquals(set, matrix.nextSet(y, x));
+                    assertEquals(clear, matrix.nextClear(y, x));
+                }
+                int n = matrix.getRuns(y, runs);
+                int k = 0;
+                for (int x = 0; x < width; ++x) {
+                    if (matrix.get(x, y) && (x == 0 || !matrix.get(x - 1, y))) {
+                        int end = x;
+                        while (end < width && matrix.get(end, y))
+                            ++end;
+                        assertEquals(x, runs[2 * k]);
+                        assertEquals(end - x, runs[2 * k + 1]);
+                        ++k;
+                    }
+                }
+                assertEquals(k, n);
+            }
+        }
+    }
+
+    @Test
+    public void invertTransposeAndBytes() {
+        Random random = new Random(11);
+        for (int width = 1; width <= 140; ++width) {
+            int height = 1 + random.nextInt(70);
+            byte bits[] = random(random, width, height);
+            BarcodePDF417BitMatrix matrix = BarcodePDF417BitMatrix.fromBytes(bits, width, height);
+            BarcodePDF417BitMatrix inverted = matrix.invert();
+            BarcodePDF417BitMatrix transposed = matrix.transpose();
+            assertEquals(height, transposed.getWidth());
+            assertEquals(width, transposed.getHeight());
+            for (int y = 0; y < height; ++y) {
+                for (int x = 0; x < width; ++x) {
+                    assertEquals(!matrix.get(x, y), inverted.get(x, y));
+                    assertEquals(matrix.get(x, y), transposed.get(y, x));
+                }
+            }
+            // the bits after the last module are cleared, also when inverted
+            byte expected[] = (byte[])bits.clone();
+            byte invertedBytes[] = new byte[bits.length];
+            int stride = (width + 7) / 8;
+            int mask = 0xff00 >> (width - (stride - 1) * 8);
+            for (int k = 0; k < bits.length; ++k) {
+                invertedBytes[k] = (byte)~bits[k];
+                if (k % stride == stride - 1) {
+                    expected[k] &= mask;
+                    invertedBytes[k] &= mask;
+                }
+            }
+            assertArrayEquals(expected, matrix.toBytes());
+            assertArrayEquals(invertedBytes, inverted.toBytes());
+            assertArrayEquals(expected, inverted.invert().toBytes());
+        }
+    }
+
+    @Test
+    public void matchesTheBarcode() {
+        BarcodePDF417 barcode = new BarcodePDF417();
+        barcode.setText("PDF417 bit matrix 0123456789");
+        barcode.paintCode();
+        BarcodePDF417BitMatrix matrix = barcode.getBitMatrix();
+        assertEquals(barcode.getBitColumns(), matrix.getWidth());
+        assertEquals(barcode.getCodeRows(), matrix.getHeight());
+        assertArrayEquals(barcode.getOutBits(), matrix.toBytes());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void scanRejectsNegativeColumn() {
+        BarcodePDF417BitMatrix.fromBytes(new byte[2], 10, 1).nextSet(0, -1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void scanRejectsInvalidRow() {
+        BarcodePDF417BitMatrix.fromBytes(new byte[2], 10, 1).nextClear(1, 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void runsRejectInvalidRow() {
+        BarcodePDF417BitMatrix.fromBytes(new byte[2], 10, 1).getRuns(-1, new int[11]);
+    }
+}
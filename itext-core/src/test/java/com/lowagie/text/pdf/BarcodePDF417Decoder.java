@@ -0,0 +1,220 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+package com.lowagie.text.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+
+/** Decodes the data codewords of a PDF417 barcode back to bytes, so the
+ * tests can check that an encoding is valid and not only short. It rejects
+ * the sequences the encoder must never produce.
+ */
+public class BarcodePDF417Decoder {
+
+    private static final String MIXED_SET = "0123456789&\r\t,:#-.$/+%*=^";
+    private static final String PUNCTUATION_SET = ";<>@[\\]_`~!\r\t,:\n-.$/\"|*()?{}'";
+
+    private static final int ALPHA = 0;
+    private static final int LOWER = 1;
+    private static final int MIXED = 2;
+    private static final int PUNCTUATION = 3;
+
+    /** Decodes the data codewords up to the macro control block.
+     * @param cw the codewords, the first one is the length descriptor
+     * @param length the number of codewords
+     * @return the bytes
+     */
+    public static byte[] decode(int[] cw, int length) {
+        if (cw[0] != length)
+            throw new IllegalArgumentException("Wrong length descriptor " + cw[0] + " for " + length + " codewords.");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean text = true;
+        int sub = ALPHA;
+        int shift = -1;
+        int k = 1;
+        while (k < length) {
+            int c = cw[k];
+            if (c == BarcodePDF417.MACRO_SEGMENT_ID || c == BarcodePDF417.MACRO_LAST_SEGMENT)
+                break;
+            if (c == BarcodePDF417.TEXT_MODE) {
+                text = true;
+                sub = ALPHA;
+                shift = -1;
+                ++k;
+                continue;
+            }
+            if (c == BarcodePDF417.BYTE_MODE || c == BarcodePDF417.BYTE_MODE_6 || c == BarcodePDF417.NUMERIC_MODE) {
+                int start = ++k;
+                while (k < length && cw[k] < 900)
+                    ++k;
+                if (c == BarcodePDF417.NUMERIC_MODE)
+                    decodeNumeric(cw, start, k, out);
+                else
+                    decodeBytes(cw, start, k, c == BarcodePDF417.BYTE_MODE_6, out);
+                // a text segment after it needs a latch
+                text = false;
+                continue;
+            }
+            if (c == BarcodePDF417.BYTESHIFT) {
+                if (!text)
+                    throw new IllegalStateException("Byte shift outside the text at " + k + ".");
+                // a pending shift is the padding of the last codeword
+                shift = -1;
+                if (k + 1 >= length || cw[k + 1] > 255)
+                    throw new IllegalStateException("Bad shifted byte at " + k + ".");
+                out.write(cw[k + 1]);
+                k += 2;
+                continue;
+            }
+            if (c >= 900)
+                throw new IllegalStateException("Unexpected codeword " + c + " at " + k + ".");
+            if (!text)
+                throw new IllegalStateException("Text codeword without a latch at " + k + ".");
+            int halves[] = {c / 30, c % 30};
+            for (int h = 0; h < 2; ++h) {
+                int v = halves[h];
+                boolean shifted = shift >= 0;
+                int mode = shifted ? shift : sub;
+                shift = -1;
+                switch (mode) {
+                case ALPHA:
+                case LOWER:
+                    if (v < 26)
+                        out.write((mode == ALPHA ? 'A' : 'a') + v);
+                    else if (v == 26)
+                        out.write(' ');
+                    else if (shifted)
+                        throw new IllegalStateException("Latch in a shift at " + k + ".");
+                    else if (v == 27) {
+                        if (mode == ALPHA)
+                            sub = LOWER;
+                        else
+                            shift = ALPHA;
+                    }
+                    else if (v == 28)
+                        sub = MIXED;
+                    else
+                        shift = PUNCTUATION;
+                    break;
+                case MIXED:
+                    if (v < 25)
+                        out.write(MIXED_SET.charAt(v));
+                    else if (v == 25)
+                        sub = PUNCTUATION;
+                    else if (v == 26)
+                        out.write(' ');
+                    else if (v == 27)
+                        sub = LOWER;
+                    else if (v == 28)
+                        sub = ALPHA;
+                    else
+                        shift = PUNCTUATION;
+                    break;
+                default:
+                    if (v < 29)
+                        out.write(PUNCTUATION_SET.charAt(v));
+                    else if (shifted)
+                        throw new IllegalStateException("Latch in a shift at " + k + ".");
+                    else
+                        sub = ALPHA;
+                    break;
+                }
+            }
+            ++k;
+        }
+        return out.toByteArray();
+    }
+
+    private static void decodeNumeric(int[] cw, int start, int end, ByteArrayOutputStream out) {
+        BigInteger base = BigInteger.valueOf(900);
+        for (int g = start; g < end; g += 15) {
+            BigInteger v = BigInteger.ZERO;
+            for (int k = g; k < Math.min(end, g + 15); ++k)
+                v = v.multiply(base).add(BigInteger.valueOf(cw[k]));
+            String digits = v.toString();
+            if (digits.charAt(0) != '1')
+                throw new IllegalStateException("Numeric group without the leading 1 at " + g + ".");
+            for (int k = 1; k < digits.length(); ++k)
+                out.write(digits.charAt(k));
+        }
+    }
+
+    private static void decodeBytes(int[] cw, int start, int end, boolean six, ByteArrayOutputStream out) {
+        int n = end - start;
+        if (six && n % 5 != 0)
+            throw new IllegalStateException("Byte segment of 6 with " + n + " codewords.");
+        int groups = six ? n / 5 : (n - 1) / 5;
+        int p = start;
+        for (int g = 0; g < groups; ++g) {
+            long v = 0;
+            for (int k = 0; k < 5; ++k)
+                v = v * 900 + cw[p++];
+            if (v >= (1L << 48))
+                throw new IllegalStateException("Byte group out of range at " + (p - 5) + ".");
+            for (int k = 5; k >= 0; --k)
+                out.write((int)(v >>> (8 * k)) & 0xff);
+        }
+        for (; p < end; ++p) {
+            if (cw[p] > 255)
+                throw new IllegalStateException("Byte out of range at " + p + ".");
+            out.write(cw[p]);
+        }
+    }
+
+    /** Compiles and decodes a text.
+     * @param barcode the barcode with the text set
+     * @return the decoded bytes
+     */
+    public static byte[] roundTrip(BarcodePDF417 barcode) {
+        BarcodePDF417Codewords data = barcode.compile();
+        int cw[] = new int[BarcodePDF417.MAX_DATA_CODEWORDS + 2];
+        int n = data.copyTo(cw);
+        return decode(cw, n);
+    }
+}
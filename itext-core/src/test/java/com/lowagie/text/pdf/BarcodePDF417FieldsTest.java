@@ -0,0 +1,155 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Checks that the fields decode back to their concatenated bytes and
+ * that they are compacted by their types.
+ */
+public class BarcodePDF417FieldsTest {
+
+    private static byte[] decode(BarcodePDF417Codewords data) {
+        int cw[] = data.getCodewords();
+        return BarcodePDF417Decoder.decode(cw, cw.length);
+    }
+
+    private static int count(BarcodePDF417Codewords data, int codeword) {
+        int cw[] = data.getCodewords();
+        int n = 0;
+        for (int k = 0; k < cw.length; ++k) {
+            if (cw[k] == codeword)
+                ++n;
+        }
+        return n;
+    }
+
+    @Test
+    public void numbers() {
+        BarcodePDF417Fields fields = new BarcodePDF417Fields();
+        fields.addNumber(Long.MIN_VALUE);
+        fields.addText(" ");
+        fields.addNumber(-5, 3);
+        fields.addText(" ");
+        fields.addNumber(0);
+        fields.addDigits("00012");
+        assertEquals("-9223372036854775808 -005 000012", new String(decode(fields.compile())));
+    }
+
+    @Test
+    public void segmentsFollowTheFields() throws UnsupportedEncodingException {
+        BarcodePDF417Fields fields = new BarcodePDF417Fields();
+        fields.addNumber(1234567890123456L);
+        fields.addText("|2026-10-18|");
+        fields.addNumber(12345);
+        fields.addText("|");
+        fields.addBytes(new byte[]{(byte)0xe9}, 0, 1);
+        fields.addText("|");
+        fields.addNumber(123456789012345678L);
+        BarcodePDF417Codewords data = fields.compile();
+        assertEquals("1234567890123456|2026-10-18|12345|\u00e9|123456789012345678", new String(decode(data), "ISO-8859-1"));
+        // the long numbers are numeric, the short one is text and the byte is shifted
+        assertEquals(2, count(data, BarcodePDF417.NUMERIC_MODE));
+        assertEquals(1, count(data, BarcodePDF417.BYTESHIFT));
+        assertEquals(0, count(data, BarcodePDF417.BYTE_MODE));
+    }
+
+    @Test
+    public void randomFieldsDecodeToTheirBytes() {
+        Random random = new Random(15);
+        int options[] = {0, BarcodePDF417.PDF417_OPTIMAL_TEXT};
+        for (int k = 0; k < 2000; ++k) {
+            BarcodePDF417 settings = new BarcodePDF417();
+            settings.setOptions(options[k % 2]);
+            BarcodePDF417Fields fields = new BarcodePDF417Fields(settings);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int n = random.nextInt(8);
+            for (int j = 0; j < n; ++j) {
+                byte b[];
+                switch (random.nextInt(4)) {
+                case 0:
+                    long v = random.nextInt(3) == 0 ? random.nextLong() : random.nextInt(100000);
+                    fields.addNumber(v);
+                    b = Long.toString(v).getBytes();
+                    break;
+                case 1:
+                    StringBuffer digits = new StringBuffer();
+                    for (int d = random.nextInt(50); d > 0; --d)
+                        digits.append((char)('0' + random.nextInt(10)));
+                    fields.addDigits(digits);
+                    b = digits.toString().getBytes();
+                    break;
+                case 2:
+                    b = new byte[random.nextInt(20)];
+                    for (int d = 0; d < b.length; ++d)
+                        b[d] = (byte)"ABZabz09 &,;@\r".charAt(random.nextInt(14));
+                    fields.addText(b, 0, b.length);
+                    break;
+                default:
+                    b = new byte[random.nextInt(random.nextBoolean() ? 2 : 20)];
+                    random.nextBytes(b);
+                    fields.addBytes(b, 0, b.length);
+                    break;
+                }
+                out.write(b, 0, b.length);
+            }
+            byte text[] = out.toByteArray();
+            assertEquals(text.length, fields.getLength());
+            assertArrayEquals(text, decode(fields.compile()));
+        }
+    }
+}
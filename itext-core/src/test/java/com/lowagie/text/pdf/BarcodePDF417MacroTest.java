@@ -0,0 +1,175 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Checks that the macro PDF417 segments take the longest part of the
+ * remaining bytes that fits and that they decode back to the bytes.
+ */
+public class BarcodePDF417MacroTest {
+
+    private static final int OPTIONS[] = {0, BarcodePDF417.PDF417_OPTIMAL_TEXT,
+        BarcodePDF417.PDF417_OPTIMAL_SEGMENTATION, BarcodePDF417.PDF417_FORCE_BINARY};
+
+    private static BarcodePDF417 settings(int options, int rows, int columns, int errorLevel) {
+        BarcodePDF417 settings = new BarcodePDF417();
+        settings.setOptions(options | BarcodePDF417.PDF417_FIXED_RECTANGLE | BarcodePDF417.PDF417_USE_ERROR_LEVEL);
+        settings.setCodeRows(rows);
+        settings.setCodeColumns(columns);
+        settings.setErrorLevel(errorLevel);
+        settings.setMacroFileId("17");
+        return settings;
+    }
+
+    private static byte[] random(Random random, int length) {
+        byte text[] = new byte[length];
+        int k = 0;
+        while (k < length) {
+            int kind = random.nextInt(3);
+            int run = 1 + random.nextInt(kind == 0 ? 20 : 8);
+            for (int j = 0; j < run && k < length; ++j) {
+                if (kind == 0)
+                    text[k++] = (byte)('0' + random.nextInt(10));
+                else if (kind == 1)
+                    text[k++] = (byte)"ABZabz &,;".charAt(random.nextInt(10));
+                else
+                    text[k++] = (byte)random.nextInt(256);
+            }
+        }
+        return text;
+    }
+
+    private static boolean fits(BarcodePDF417 settings, byte[] text, int length, int id, int count) {
+        BarcodePDF417 barcode = new BarcodePDF417();
+        barcode.setOptions(settings.getOptions() | BarcodePDF417.PDF417_USE_MACRO);
+        barcode.setCodeRows(settings.getCodeRows());
+        barcode.setCodeColumns(settings.getCodeColumns());
+        barcode.setErrorLevel(settings.getErrorLevel());
+        barcode.setMacroFileId(settings.getMacroFileId());
+        barcode.setMacroSegmentId(id);
+        barcode.setMacroSegmentCount(count);
+        barcode.setText(text, 0, length);
+        return barcode.fitsLayout();
+    }
+
+    @Test
+    public void longerPartAfterOneThatDoesNotFit() {
+        // 13 digits take less codewords than 12 so the part ends after the digits
+        BarcodePDF417 settings = settings(0, 3, 5, 0);
+        settings.setMacroFileId(null);
+        BarcodePDF417Encoder encoder = new BarcodePDF417Encoder(settings);
+        byte text[] = "WJGE8257063779586859K117260137893".getBytes();
+        assertEquals(20, encoder.macroSegmentLength(text, 0, text.length, false, 0));
+    }
+
+    @Test
+    public void longestPartThatFits() {
+        Random random = new Random(3);
+        for (int k = 0; k < 300; ++k) {
+            BarcodePDF417 settings = settings(OPTIONS[k % OPTIONS.length], 3 + random.nextInt(8), 1 + random.nextInt(5), random.nextInt(3));
+            BarcodePDF417Encoder encoder = new BarcodePDF417Encoder(settings);
+            byte text[] = random(random, 20 + random.nextInt(200));
+            int id = random.nextInt(3);
+            int length;
+            try {
+                length = encoder.macroSegmentLength(text, 0, text.length, false, id);
+            }
+            catch (IndexOutOfBoundsException e) {
+                length = 0;
+            }
+            if (length > 0)
+                assertTrue(fits(settings, text, length, id, id + 2));
+            for (int n = length + 1; n < text.length; ++n)
+                assertFalse(k + " " + n, fits(settings, text, n, id, id + 2));
+        }
+    }
+
+    @Test
+    public void segmentsDecodeToTheText() throws InterruptedException {
+        Random random = new Random(4);
+        for (int k = 0; k < 40; ++k) {
+            BarcodePDF417 settings = settings(OPTIONS[k % OPTIONS.length], 6 + random.nextInt(20), 2 + random.nextInt(8), random.nextInt(3));
+            BarcodePDF417Encoder encoder = new BarcodePDF417Encoder(settings);
+            byte text[] = random(random, 100 + random.nextInt(3000));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int pos = 0;
+            int count = 0;
+            while (pos < text.length) {
+                int remain = text.length - pos;
+                int length = encoder.macroSegmentLength(text, pos, remain, remain <= BarcodePDF417.ABSOLUTE_MAX_TEXT_SIZE, count);
+                byte segment[] = new byte[length];
+                System.arraycopy(text, pos, segment, 0, length);
+                BarcodePDF417 barcode = new BarcodePDF417();
+                barcode.setOptions(settings.getOptions());
+                barcode.setText(segment);
+                byte decoded[] = BarcodePDF417Decoder.roundTrip(barcode);
+                out.write(decoded, 0, decoded.length);
+                pos += length;
+                ++count;
+            }
+            assertArrayEquals(text, out.toByteArray());
+            BarcodePDF417Result results[] = encoder.encodeMacro(text, null);
+            assertEquals(count, results.length);
+            for (int n = 0; n < count; ++n) {
+                assertEquals(settings.getCodeRows(), results[n].getCodeRows());
+                assertEquals(settings.getCodeColumns(), results[n].getCodeColumns());
+            }
+        }
+    }
+}
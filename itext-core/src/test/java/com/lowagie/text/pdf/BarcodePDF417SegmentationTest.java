@@ -0,0 +1,173 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+package com.lowagie.text.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Checks that <CODE>PDF417_OPTIMAL_SEGMENTATION</CODE> gives valid encodings
+ * with the least number of codewords, comparing short texts with every
+ * possible segmentation.
+ */
+public class BarcodePDF417SegmentationTest {
+
+    private static final String ALPHABET = "0123456789AZaz &,;@é\u0001\n";
+
+    private static BarcodePDF417 barcode(byte[] text, int options) {
+        BarcodePDF417 barcode = new BarcodePDF417();
+        barcode.setOptions(options);
+        barcode.setText(text);
+        return barcode;
+    }
+
+    private static byte[] random(Random random, int digits, int length) {
+        byte text[] = new byte[digits + length];
+        for (int k = 0; k < digits; ++k)
+            text[k] = (byte)('0' + random.nextInt(10));
+        for (int k = digits; k < text.length; ++k) {
+            String set = random.nextBoolean() ? ALPHABET.substring(0, 10) : ALPHABET;
+            text[k] = (byte)set.charAt(random.nextInt(set.length()));
+        }
+        return text;
+    }
+
+    /** Finds the least number of codewords of the text over the segmentations
+     * that start with <CODE>first</CODE>, compacting the text segments optimally.
+     */
+    private static class Search {
+        final BarcodePDF417 barcode;
+        final byte[] text;
+        final BarcodePDF417.SegmentList list = new BarcodePDF417.SegmentList();
+        int best = Integer.MAX_VALUE;
+
+        Search(byte[] text) {
+            this.text = text;
+            barcode = barcode(text, BarcodePDF417.PDF417_OPTIMAL_TEXT);
+        }
+
+        void run(int pos) {
+            if (pos == text.length) {
+                best = Math.min(best, barcode.compileSegments(list).getLength());
+                return;
+            }
+            boolean digits = true;
+            for (int end = pos + 1; end <= text.length; ++end) {
+                digits &= text[end - 1] >= '0' && text[end - 1] <= '9';
+                run(pos, end, 'T');
+                run(pos, end, 'B');
+                if (digits)
+                    run(pos, end, 'N');
+            }
+        }
+
+        void run(int start, int end, char type) {
+            int size = list.size();
+            list.add(type, start, end);
+            run(end);
+            list.size = size;
+        }
+    }
+
+    @Test
+    public void numericSegmentLeavesDigitsToText() {
+        // 44 digits are a full numeric group, the last one is cheaper as text
+        StringBuffer text = new StringBuffer();
+        for (int k = 0; k < 45; ++k)
+            text.append('1');
+        text.append("&&");
+        byte bytes[] = text.toString().getBytes();
+        BarcodePDF417 barcode = barcode(bytes, BarcodePDF417.PDF417_OPTIMAL_SEGMENTATION);
+        assertEquals(20, barcode.compile().getLength());
+        assertArrayEquals(bytes, BarcodePDF417Decoder.roundTrip(barcode));
+        assertEquals(21, barcode(bytes, 0).compile().getLength());
+    }
+
+    @Test
+    public void shortTextsMatchExhaustiveSearch() {
+        Random random = new Random(5);
+        for (int k = 0; k < 300; ++k) {
+            byte text[] = random(random, 0, 1 + random.nextInt(6));
+            Search search = new Search(text);
+            search.run(0);
+            BarcodePDF417 barcode = barcode(text, BarcodePDF417.PDF417_OPTIMAL_SEGMENTATION);
+            assertEquals(new String(text), search.best, barcode.compile().getLength());
+            assertArrayEquals(text, BarcodePDF417Decoder.roundTrip(barcode));
+        }
+    }
+
+    @Test
+    public void digitRunsMatchExhaustiveSearchOfTheTail() {
+        Random random = new Random(6);
+        for (int k = 0; k < 200; ++k) {
+            int digits = 1 + random.nextInt(140);
+            byte text[] = random(random, digits, 1 + random.nextInt(3));
+            Search search = new Search(text);
+            for (int end = Math.max(1, text.length - 6); end <= digits; ++end)
+                search.run(0, end, 'N');
+            int length = barcode(text, BarcodePDF417.PDF417_OPTIMAL_SEGMENTATION).compile().getLength();
+            assertTrue(new String(text), length <= search.best);
+        }
+    }
+
+    @Test
+    public void neverLongerThanDefault() {
+        Random random = new Random(7);
+        for (int k = 0; k < 500; ++k) {
+            byte text[] = random(random, random.nextInt(3) == 0 ? random.nextInt(60) : 0, random.nextInt(300));
+            BarcodePDF417 optimal = barcode(text, BarcodePDF417.PDF417_OPTIMAL_SEGMENTATION);
+            assertTrue(optimal.compile().getLength() <= barcode(text, 0).compile().getLength());
+            assertArrayEquals(text, BarcodePDF417Decoder.roundTrip(optimal));
+        }
+    }
+}
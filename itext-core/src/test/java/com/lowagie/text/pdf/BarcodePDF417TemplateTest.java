@@ -0,0 +1,114 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Checks that a template gives the same barcodes as the encoder with the
+ * prefix and the suffix joined.
+ */
+public class BarcodePDF417TemplateTest {
+
+    private static final int OPTIONS[] = {0, BarcodePDF417.PDF417_OPTIMAL_TEXT,
+        BarcodePDF417.PDF417_OPTIMAL_SEGMENTATION, BarcodePDF417.PDF417_FORCE_BINARY};
+
+    private static byte[] random(Random random, int length) {
+        byte text[] = new byte[length];
+        int k = 0;
+        while (k < length) {
+            int kind = random.nextInt(3);
+            int run = 1 + random.nextInt(kind == 0 ? 30 : 8);
+            for (int j = 0; j < run && k < length; ++j) {
+                if (kind == 0)
+                    text[k++] = (byte)('0' + random.nextInt(10));
+                else if (kind == 1)
+                    text[k++] = (byte)"ABZabz &,;".charAt(random.nextInt(10));
+                else
+                    text[k++] = (byte)random.nextInt(256);
+            }
+        }
+        return text;
+    }
+
+    private static byte[] join(byte[] prefix, byte[] suffix) {
+        byte text[] = new byte[prefix.length + suffix.length];
+        System.arraycopy(prefix, 0, text, 0, prefix.length);
+        System.arraycopy(suffix, 0, text, prefix.length, suffix.length);
+        return text;
+    }
+
+    @Test
+    public void sameAsTheJoinedText() {
+        Random random = new Random(14);
+        for (int k = 0; k < 200; ++k) {
+            BarcodePDF417 settings = new BarcodePDF417();
+            settings.setOptions(OPTIONS[k % OPTIONS.length]);
+            BarcodePDF417Encoder encoder = new BarcodePDF417Encoder(settings);
+            byte prefix[] = random(random, random.nextInt(200));
+            BarcodePDF417Template template = new BarcodePDF417Template(encoder, prefix);
+            BarcodePDF417Template other = new BarcodePDF417Template(encoder, random(random, 1 + random.nextInt(20)));
+            for (int j = 0; j < 10; ++j) {
+                byte suffix[] = random(random, random.nextInt(100));
+                byte text[] = join(prefix, suffix);
+                assertArrayEquals(encoder.compile(text).getCodewords(), template.compile(suffix).getCodewords());
+                assertArrayEquals(encoder.encode(text).getOutBits(), template.encode(suffix).getOutBits());
+                // other texts in the work area of the thread
+                if (random.nextBoolean())
+                    encoder.encode("other text");
+                if (random.nextBoolean())
+                    other.compile(suffix);
+            }
+        }
+    }
+}
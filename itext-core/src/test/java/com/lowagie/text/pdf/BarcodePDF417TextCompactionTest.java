@@ -0,0 +1,223 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+
+package com.lowagie.text.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Checks that <CODE>PDF417_OPTIMAL_TEXT</CODE> gives valid text segments
+ * with the least number of codewords, comparing short texts with every
+ * choice of latches and shifts.
+ */
+public class BarcodePDF417TextCompactionTest {
+
+    private static final String ALPHABET = "AZaz09 &,;@\ré";
+    private static final String MIXED_SET = "0123456789&\r\t,:#-.$/+%*=^";
+    private static final String PUNCTUATION_SET = ";<>@[\\]_`~!\r\t,:\n-.$/\"|*()?{}'";
+
+    private static final int ALPHA = 0;
+    private static final int LOWER = 1;
+    private static final int MIXED = 2;
+    private static final int PUNCTUATION = 3;
+
+    /** The latches from a sub-mode to another, the shortest ones. */
+    private static final int LATCHES[][][] = {
+        {{}, {27}, {28}, {28, 25}},
+        {{28, 28}, {}, {28}, {28, 25}},
+        {{28}, {27}, {}, {25}},
+        {{29}, {29, 27}, {29, 28}, {}}
+    };
+
+    private static int value(int mode, int c) {
+        switch (mode) {
+        case ALPHA:
+            return c >= 'A' && c <= 'Z' ? c - 'A' : c == ' ' ? 26 : -1;
+        case LOWER:
+            return c >= 'a' && c <= 'z' ? c - 'a' : c == ' ' ? 26 : -1;
+        case MIXED:
+            return c == ' ' ? 26 : MIXED_SET.indexOf(c);
+        default:
+            return PUNCTUATION_SET.indexOf(c);
+        }
+    }
+
+    /** Finds the least number of codewords of a text segment over the
+     * choices of latch, shift and byte shift of each character. Every
+     * encoding is checked with the decoder.
+     */
+    private static class Search {
+        final byte[] text;
+        final int halves[] = new int[200];
+        final int cw[] = new int[200];
+        int best = Integer.MAX_VALUE;
+
+        Search(byte[] text) {
+            this.text = text;
+        }
+
+        void run(int pos, int mode, int n) {
+            if (pos == text.length) {
+                int length = pack(n);
+                assertArrayEquals(text, BarcodePDF417Decoder.decode(cw, length));
+                best = Math.min(best, length);
+                return;
+            }
+            int c = text[pos] & 0xff;
+            boolean any = false;
+            for (int t = 0; t < 4; ++t) {
+                int v = value(t, c);
+                if (v < 0)
+                    continue;
+                any = true;
+                int m = n;
+                for (int k = 0; k < LATCHES[mode][t].length; ++k)
+                    halves[m++] = LATCHES[mode][t][k];
+                halves[m++] = v;
+                run(pos + 1, t, m);
+            }
+            int v = value(PUNCTUATION, c);
+            if (v >= 0 && mode != PUNCTUATION) {
+                halves[n] = 29;
+                halves[n + 1] = v;
+                run(pos + 1, mode, n + 2);
+            }
+            v = value(ALPHA, c);
+            if (v >= 0 && mode == LOWER) {
+                halves[n] = 27;
+                halves[n + 1] = v;
+                run(pos + 1, mode, n + 2);
+            }
+            if (any)
+                return;
+            // a latch can take the place of the padding before the byte shift
+            for (int t = 0; t < 4; ++t) {
+                int m = n;
+                for (int k = 0; k < LATCHES[mode][t].length; ++k)
+                    halves[m++] = LATCHES[mode][t][k];
+                int next = t;
+                if ((m & 1) != 0) {
+                    // the padding latches to alpha in punctuation
+                    halves[m++] = 29;
+                    if (t == PUNCTUATION)
+                        next = ALPHA;
+                }
+                // the byte shift and the byte, stored as negative halves
+                halves[m++] = -1;
+                halves[m++] = -1 - c;
+                run(pos + 1, next, m);
+            }
+        }
+
+        int pack(int n) {
+            int length = 1;
+            for (int k = 0; k < n; k += 2) {
+                if (halves[k] < 0) {
+                    cw[length++] = BarcodePDF417.BYTESHIFT;
+                    cw[length++] = -1 - halves[k + 1];
+                }
+                else
+                    cw[length++] = halves[k] * 30 + (k + 1 < n ? halves[k + 1] : 29);
+            }
+            cw[0] = length;
+            return length;
+        }
+    }
+
+    private static byte[] random(Random random, int length) {
+        byte text[] = new byte[length];
+        for (int k = 0; k < length; ++k)
+            text[k] = (byte)ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        return text;
+    }
+
+    private static BarcodePDF417Codewords compileText(byte[] text) {
+        BarcodePDF417 barcode = new BarcodePDF417();
+        barcode.setOptions(BarcodePDF417.PDF417_OPTIMAL_TEXT);
+        barcode.setText(text);
+        BarcodePDF417.SegmentList list = new BarcodePDF417.SegmentList();
+        list.add('T', 0, text.length);
+        return barcode.compileSegments(list);
+    }
+
+    @Test
+    public void shortTextsMatchExhaustiveSearch() {
+        Random random = new Random(8);
+        int cw[] = new int[BarcodePDF417.MAX_DATA_CODEWORDS + 2];
+        for (int k = 0; k < 400; ++k) {
+            byte text[] = random(random, 1 + random.nextInt(7));
+            Search search = new Search(text);
+            search.run(0, ALPHA, 0);
+            BarcodePDF417Codewords data = compileText(text);
+            int n = data.copyTo(cw);
+            assertEquals(new String(text), search.best, n);
+            assertArrayEquals(text, BarcodePDF417Decoder.decode(cw, n));
+        }
+    }
+
+    @Test
+    public void neverLongerThanDefault() {
+        Random random = new Random(9);
+        for (int k = 0; k < 500; ++k) {
+            byte text[] = random(random, random.nextInt(400));
+            BarcodePDF417 optimal = new BarcodePDF417();
+            optimal.setOptions(BarcodePDF417.PDF417_OPTIMAL_TEXT);
+            optimal.setText(text);
+            BarcodePDF417 greedy = new BarcodePDF417();
+            greedy.setText(text);
+            assertTrue(optimal.compile().getLength() <= greedy.compile().getLength());
+            assertArrayEquals(text, BarcodePDF417Decoder.roundTrip(optimal));
+        }
+    }
+}
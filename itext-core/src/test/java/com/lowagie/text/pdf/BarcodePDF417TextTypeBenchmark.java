@@ -0,0 +1,101 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+package com.lowagie.text.pdf;
+
+import java.util.Random;
+
+/** Measures the cost per byte of classifying the text for the text compaction,
+ * by searching the sub-mode character sets as it was done before and with
+ * the table, and the cost per byte of compiling the data codewords. It is
+ * run with <CODE>java com.lowagie.text.pdf.BarcodePDF417TextTypeBenchmark</CODE>
+ * after <CODE>mvn test-compile</CODE> with <CODE>target/classes</CODE> and
+ * <CODE>target/test-classes</CODE> in the class path.
+ */
+public class BarcodePDF417TextTypeBenchmark {
+
+    private static final int LENGTH = 900;
+    private static final int ROUNDS = 40000;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789 ,.-/:;()@#";
+        byte text[] = new byte[LENGTH];
+        for (int k = 0; k < LENGTH; ++k)
+            text[k] = (byte)alphabet.charAt(random.nextInt(alphabet.length()));
+        BarcodePDF417 barcode = new BarcodePDF417();
+        barcode.setText(text);
+        int types[] = new int[LENGTH];
+        for (int pass = 0; pass < 3; ++pass) {
+            long t0 = System.nanoTime();
+            int sum = 0;
+            for (int r = 0; r < ROUNDS; ++r) {
+                for (int k = 0; k < LENGTH; ++k)
+                    types[k] = BarcodePDF417TextTypeTest.classify((char)(text[k] & 0xff));
+                sum += types[r % LENGTH];
+            }
+            long t1 = System.nanoTime();
+            for (int r = 0; r < ROUNDS; ++r) {
+                barcode.classifyText();
+                sum += barcode.getTextTypeAndValue(LENGTH, r % LENGTH);
+            }
+            long t2 = System.nanoTime();
+            for (int r = 0; r < ROUNDS / 20; ++r)
+                sum += barcode.compile().getLength();
+            long t3 = System.nanoTime();
+            double bytes = (double)LENGTH * ROUNDS;
+            System.out.println("character sets " + format((t1 - t0) / bytes)
+                + " ns/byte, table " + format((t2 - t1) / bytes)
+                + " ns/byte, compile " + format((t3 - t2) / (bytes / 20)) + " ns/byte (" + sum + ")");
+        }
+    }
+
+    private static String format(double v) {
+        return String.valueOf(Math.round(v * 100) / 100.0);
+    }
+}
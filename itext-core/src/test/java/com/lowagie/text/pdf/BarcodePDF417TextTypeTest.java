@@ -0,0 +1,107 @@
+/*
+ *
+ * Copyright 2026 by the iText contributors
+ *
+ * The contents of this file are subject to the Mozilla Public License Version 1.1
+ * (the "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the License.
+ *
+ * The Original Code is 'iText, a free JAVA-PDF library'.
+ *
+ * The Initial Developer of the Original Code is Bruno Lowagie. Portions created by
+ * the Initial Developer are Copyright (C) 1999, 2000, 2001, 2002 by Bruno Lowagie.
+ * All Rights Reserved.
+ * Co-Developer of the code is Paulo Soares. Portions created by the Co-Developer
+ * are Copyright (C) 2000, 2001, 2002 by Paulo Soares. All Rights Reserved.
+ *
+ * Contributor(s): all the names of the contributors are added in the source code
+ * where applicable.
+ *
+ * Alternatively, the contents of this file may be used under the terms of the
+ * LGPL license (the "GNU LIBRARY GENERAL PUBLIC LICENSE"), in which case the
+ * provisions of LGPL are applicable instead of those above.  If you wish to
+ * allow use of your version of this file only under the terms of the LGPL
+ * License and not to allow others to use your version of this file under
+ * the MPL, indicate your decision by deleting the provisions above and
+ * replace them with the notice and other provisions required by the LGPL.
+ * If you do not delete the provisions above, a recipient may use your version
+ * of this file under either the MPL or the GNU LIBRARY GENERAL PUBLIC LICENSE.
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the MPL as stated above or under the terms of the GNU
+ * Library General Public License as published by the Free Software Foundation;
+ * either version 2 of the License, or any later version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Library general Public License for more
+ * details.
+ *
+ * If you didn't download this code from the following link, you should check if
+ * you aren't using an obsolete version:
+ * http://www.lowagie.com/iText/
+ */
+
+package com.lowagie.text.pdf;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Checks the text compaction classification table against the classification
+ * of each byte with the sub-mode character sets.
+ */
+public class BarcodePDF417TextTypeTest {
+
+    static final String MIXED_SET = "0123456789&\r\t,:#-.$/+%*=^";
+    static final String PUNCTUATION_SET = ";<>@[\\]_`~!\r\t,:\n-.$/\"|*()?{}'";
+
+    /** Classifies a byte by searching the sub-mode character sets.
+     * @param c the byte
+     * @return the type bits and the value
+     */
+    static int classify(char c) {
+        if (c >= 'A' && c <= 'Z')
+            return BarcodePDF417.ALPHA + c - 'A';
+        if (c >= 'a' && c <= 'z')
+            return BarcodePDF417.LOWER + c - 'a';
+        if (c == ' ')
+            return BarcodePDF417.ALPHA + BarcodePDF417.LOWER + BarcodePDF417.MIXED + BarcodePDF417.SPACE;
+        int ms = MIXED_SET.indexOf(c);
+        int ps = PUNCTUATION_SET.indexOf(c);
+        if (ms < 0 && ps < 0)
+            return BarcodePDF417.ISBYTE + c;
+        if (ms == ps)
+            return BarcodePDF417.MIXED + BarcodePDF417.PUNCTUATION + ms;
+        if (ms >= 0)
+            return BarcodePDF417.MIXED + ms;
+        return BarcodePDF417.PUNCTUATION + ps;
+    }
+
+    @Test
+    public void tableMatchesCharacterSets() {
+        byte text[] = new byte[256];
+        for (int k = 0; k < 256; ++k)
+            text[k] = (byte)k;
+        BarcodePDF417 barcode = new BarcodePDF417();
+        barcode.setText(text);
+        barcode.classifyText();
+        for (int k = 0; k < 256; ++k)
+            assertEquals("byte " + k, classify((char)k), barcode.getTextTypeAndValue(256, k));
+        assertEquals(0, barcode.getTextTypeAndValue(256, 256));
+    }
+
+    @Test
+    public void sliceIsClassifiedFromItsOffset() {
+        byte text[] = {'x', 'A', '1', (byte)0xe9, ';'};
+        BarcodePDF417 barcode = new BarcodePDF417();
+        barcode.setText(text, 1, 4);
+        barcode.classifyText();
+        for (int k = 0; k < 4; ++k)
+            assertEquals(classify((char)(text[k + 1] & 0xff)), barcode.getTextTypeAndValue(4, k));
+    }
+}